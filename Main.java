@@ -11,6 +11,47 @@ import java.sql.*;
 import java.util.*;
 import java.io.*;
 import java.lang.Integer;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import org.qianbase.PGConnection;
+import org.qianbase.PGStatement;
+import org.qianbase.copy.CopyIn;
+import org.qianbase.copy.CopyManager;
+import org.qianbase.copy.PGCopyOutputStream;
+import org.qianbase.util.ByteBufferByteStreamWriter;
 
 public class Main
 {
@@ -22,23 +63,79 @@ public class Main
     private static String       csvNullValue = null;
     private static int          numWarehouses;
     private static int          numWorkers;
-    private static int          nextJob = 0;
-    private static Object       nextJobLock = new Object();
+    private static int          copyIntSize = 4;
+    private static JobScheduler scheduler;
 
     private static LoadDataWorker[] workers;
     private static Thread[]     workerThreads;
 
+    /*
+     * Thread.ofVirtual() and Thread.Builder.unstarted() when running
+     * with threads=virtual on Java 21 or later. Looked up by reflection
+     * so the loader still builds and runs on older JDKs.
+     */
+    private static Object       virtualBuilder = null;
+    private static Method       virtualUnstarted = null;
+
+    /*
+     * Opened by main() once all sessions are ready, so that every
+     * worker starts its first job at the same time.
+     */
+    private static CountDownLatch   startGate = new CountDownLatch(1);
+
+    /*
+     * Time limit of a duration run and the pacer of a rate limited one.
+     * Both are set before the start gate opens.
+     */
+    private static boolean          timeBounded = false;
+    private static long             deadlineNanos;
+    private static OpenLoopPacer    pacer = null;
+    private static BatchTuner       batchTuner = null;
+    private static AdaptiveLimit    activeLimit = null;
+    private static AtomicInteger    failedWorkers = new AtomicInteger();
+    private static int              maxRetries;
+    private static List<String>     importFiles = null;
+    private static long             importChunkBytes;
+    private static CSVImportPlan    importPlan = null;
+    private static OrderLineReplayFile  replayFile = null;
+
+    /*
+     * Settings of a load run that main() reads once from the properties.
+     * Each run of a sweep uses them again.
+     */
+    private static int          chunkOrders;
+    private static int          numGenerators;
+    private static int          pipelineDepth;
+    private static int          poolSize;
+    private static int          connectThreads;
+    private static String       sessionInit;
+    private static boolean      warmUp;
+    private static int          reportInterval;
+    private static String       reportFile;
+    private static int          duration;
+    private static int          rate;
+    private static boolean      autoBatch;
+    private static int          autoBatchMin;
+    private static int          autoBatchMax;
+    private static int          autoBatchInterval;
+    private static int          autoBatchMaxLatency;
+    private static boolean      aimd;
+    private static int          aimdStart;
+    private static int          aimdInterval;
+    private static int          aimdMaxCommitLatency;
+    private static int          aimdMaxRetryPct;
+    private static boolean      ramp;
+    private static int          rampHold;
+    private static PgStandInServer  standIn = null;
+
     private static String[]     argv;
 
     private static boolean              writeCSV = false;
     private static BufferedWriter       configCSV = null;
-    private static BufferedWriter       orderLineCSV = null;
+    private static CSVFileSet           orderLineCSV = null;
     private static BufferedWriter       newOrderCSV = null;
 
     public static void main(String[] args) {
-        int     i;
-
-
         /*
          * Load the Benchmark properties file.
          */
@@ -55,8 +152,12 @@ public class Main
 
         /*
          * Initialize the global Random generator that picks the
-         * C values for the load.
+         * C values for the load. With a seed property every run
+         * produces the same data.
          */
+        String seed = iniGetString("seed");
+        if (seed != null)
+            jTPCCRandom.setSeed(Long.parseLong(seed.trim()));
         rnd = new jTPCCRandom();
 
         /*
@@ -76,6 +177,41 @@ public class Main
         dbProps.setProperty("user", iniGetString("user"));
         dbProps.setProperty("password", iniGetString("password"));
 
+        /*
+         * With standIn=true the sessions talk to an in-process server
+         * that only counts what it receives, after the configured
+         * statement and commit latency.
+         */
+        if (iniGetString("standIn", "false").trim().equalsIgnoreCase("true"))
+        {
+            try
+            {
+                standIn = new PgStandInServer(iniGetInt("standInPort", 0),
+                        iniGetInt("standInStatementLatency", 0),
+                        iniGetInt("standInCommitLatency", 0));
+            }
+            catch (IOException ie)
+            {
+                System.err.println("ERROR: cannot start stand-in server - " +
+                        ie.getMessage());
+                System.exit(1);
+            }
+            Thread t = new Thread(standIn, "standin-listener");
+            t.setDaemon(true);
+            t.start();
+            db = "jdbc:qianbase://127.0.0.1:" + standIn.getPort() + "/standin";
+
+            /*
+             * The driver leaves Nagle's algorithm on by default. Against
+             * a local server that answers at once, every message over a
+             * few KB then waits for the delayed ACK (~40ms) and the run
+             * measures TCP timers instead of the client.
+             */
+            dbProps.setProperty("tcpNoDelay", "true");
+            System.out.println("Stand-in server listening on port " +
+                    standIn.getPort());
+        }
+
         /*
          * Parse other vital information from the props file.
          */
@@ -85,72 +221,216 @@ public class Main
         csvNullValue    = iniGetString("csvNullValue", "NULL");
         String flag = Main.iniGetString("update").trim();
         int commitbatch = Main.iniGetInt("commitbatch");
+        copyIntSize     = iniGetInt("copyIntSize", 4);
+        chunkOrders     = iniGetInt("chunkOrders",
+                OrderLineBatch.ORDERS_PER_WAREHOUSE);
+        numGenerators   = iniGetInt("pipeline", 0);
+        pipelineDepth   = iniGetInt("pipelineDepth", 0);
+        String threads = iniGetString("threads", "platform");
+        poolSize        = iniGetInt("poolSize", 0);
+        connectThreads  = iniGetInt("connectThreads", 32);
+        sessionInit     = iniGetString("sessionInit");
+        warmUp          = iniGetString("warmUp", "true").trim()
+                .equalsIgnoreCase("true");
+        reportInterval  = iniGetInt("reportInterval", 10);
+        duration        = iniGetInt("duration", 0);
+        rate            = iniGetInt("rate", 0);
+        autoBatch       = iniGetString("autoBatch", "false").trim()
+                .equalsIgnoreCase("true");
+        if (autoBatch)
+        {
+            autoBatchMin = iniGetInt("autoBatchMin", 10);
+            autoBatchMax = iniGetInt("autoBatchMax", 10000);
+            autoBatchInterval = iniGetInt("autoBatchInterval", 2000);
+            autoBatchMaxLatency = iniGetInt("autoBatchMaxLatency", 0);
+        }
+        aimd            = iniGetString("aimd", "false").trim()
+                .equalsIgnoreCase("true");
+        if (aimd)
+        {
+            aimdStart = iniGetInt("aimdStart", 1);
+            aimdInterval = iniGetInt("aimdInterval", 2000);
+            aimdMaxCommitLatency = iniGetInt("aimdMaxCommitLatency", 0);
+            aimdMaxRetryPct = iniGetInt("aimdMaxRetryPct", 5);
+        }
+        ramp            = iniGetString("ramp", "false").trim()
+                .equalsIgnoreCase("true");
+        if (ramp)
+        {
+            rampHold = iniGetInt("rampHold", 30);
+            if (aimd)
+            {
+                System.err.println("ERROR: ramp and aimd both control " +
+                        "the active workers, use only one");
+                System.exit(1);
+            }
+        }
+        maxRetries      = iniGetInt("maxRetries", 10);
+        reportFile      = iniGetString("reportFile");
+        boolean sweep = iniGetString("sweep", "false").trim()
+                .equalsIgnoreCase("true");
+
+        if (threads.trim().equalsIgnoreCase("virtual"))
+            initVirtualThreads();
+
+        LoadMode mode = LoadMode.forName(flag);
+        if (mode == null)
+        {
+            System.err.println("ERROR: unknown update mode '" + flag + "'");
+            System.exit(1);
+        }
 
         /*
-         * If CSV files are requested, open them all.
+         * The record mode generates the rows into replayFile. Every other
+         * mode takes its rows from replayFile, if one is given.
          */
-        if (fileLocation != null)
+        String replayPath = iniGetString("replayFile");
+        if (mode.name.equals("record") && replayPath == null)
+        {
+            System.err.println("ERROR: record needs replayFile");
+            System.exit(1);
+        }
+        if (replayPath != null)
         {
-            writeCSV = true;
-
             try
             {
-                orderLineCSV = new BufferedWriter(new FileWriter(fileLocation +
-                        "order-line.csv"));
+                if (mode.name.equals("record"))
+                {
+                    replayFile = OrderLineReplayFile.create(replayPath,
+                            numWarehouses);
+                }
+                else
+                {
+                    replayFile = OrderLineReplayFile.open(replayPath);
+                    if (replayFile.getNumWarehouses() < numWarehouses)
+                    {
+                        System.err.println("ERROR: " + replayPath +
+                                " holds only " +
+                                replayFile.getNumWarehouses() +
+                                " warehouses");
+                        System.exit(1);
+                    }
+                }
             }
             catch (IOException ie)
             {
-                System.err.println(ie.getMessage());
+                System.err.println("ERROR: " + ie.getMessage());
                 System.exit(3);
             }
         }
 
-        System.out.println("");
-        Long sessionstartTimestamp = System.currentTimeMillis();
+        /*
+         * csvimport reads the order-line CSV files in fileLocation
+         * instead of writing them.
+         */
+        if (mode.name.equals("csvimport"))
+        {
+            if (fileLocation == null)
+            {
+                System.err.println("ERROR: csvimport needs fileLocation");
+                System.exit(1);
+            }
+            if (numGenerators > 0 || poolSize > 0)
+            {
+                System.err.println("ERROR: csvimport runs one session " +
+                        "per worker, pipeline and poolSize do not apply");
+                System.exit(1);
+            }
+            importFiles = findImportFiles(fileLocation);
+            if (importFiles.isEmpty())
+            {
+                System.err.println("ERROR: no order-line*.csv or *.csv.gz files in " +
+                        fileLocation);
+                System.exit(1);
+            }
+            importChunkBytes = iniGetInt("importChunk", 64) * 1048576L;
+            fileLocation = null;
+        }
 
         /*
-         * Create the number of requested workers and start them.
+         * If CSV files are requested, open them all.
          */
-        workers = new LoadDataWorker[numWorkers];
-        workerThreads = new Thread[numWorkers];
-        for (i = 0; i < numWorkers; i++)
+        if (fileLocation != null)
         {
-            Connection dbConn;
+            writeCSV = true;
+
+            if (sweep)
+            {
+                System.err.println("ERROR: sweep needs a database, " +
+                        "not fileLocation");
+                System.exit(1);
+            }
+            int layout = CSVFileSet.parseLayout(
+                    iniGetString("csvFiles", "single"));
+            if (layout < 0)
+            {
+                System.err.println("ERROR: csvFiles must be single, " +
+                        "worker or warehouse");
+                System.exit(1);
+            }
 
+            /*
+             * csvGzip=true writes .csv.gz files made of independently
+             * compressed blocks, see GzipBlockCompressor.
+             */
+            GzipBlockCompressor gzip = null;
+            if (iniGetString("csvGzip", "false").trim()
+                    .equalsIgnoreCase("true"))
+            {
+                gzip = new GzipBlockCompressor(
+                        iniGetInt("csvGzipThreads",
+                                Runtime.getRuntime().availableProcessors()),
+                        iniGetInt("csvGzipLevel", 6),
+                        iniGetInt("csvGzipBlock", 128) * 1024);
+            }
             try
             {
-                dbConn = DriverManager.getConnection(db, dbProps);
-                dbConn.setAutoCommit(false);
-                if (writeCSV)
-                    workers[i] = new LoadDataWorker(i, csvNullValue,
-                            rnd.newRandom(),flag);
-                else
-                    workers[i] = new LoadDataWorker(i, dbConn, rnd.newRandom(),flag,commitbatch);
-                workerThreads[i] = new Thread(workers[i]);
-                workerThreads[i].start();
+                orderLineCSV = new CSVFileSet(fileLocation, "order-line",
+                        layout, (layout == CSVFileSet.LAYOUT_WAREHOUSE) ?
+                                numWarehouses : numWorkers,
+                        iniGetString("csvMerge", "false").trim()
+                                .equalsIgnoreCase("true"), gzip);
             }
-            catch (SQLException se)
+            catch (IOException ie)
             {
-                System.err.println("ERROR: " + se.getMessage());
+                System.err.println(ie.getMessage());
                 System.exit(3);
-                return;
             }
+        }
 
+        /*
+         * Duration and ramp runs cycle over the same keys until the time
+         * is up (see JobScheduler). Modes that insert them would fail on
+         * the second round with duplicate keys, and CSV files would get
+         * the rows twice. csvimport does not cycle, it just stops early.
+         */
+        if ((duration > 0 || ramp) && importFiles == null &&
+                (!mode.repeatable || writeCSV))
+        {
+            System.err.println("ERROR: " + (ramp ? "ramp" : "duration") +
+                    " runs the same rows again, " +
+                    (writeCSV ? "which the CSV output cannot take" :
+                            "which mode " + mode.name + " cannot do; use " +
+                                    "an update, delete or upsert mode"));
+            System.exit(1);
         }
 
-        for (i = 0; i < numWorkers; i++)
+        System.out.println("");
+
+        if (sweep)
+            runSweep(commitbatch);
+        else
+            runLoad(mode, numWorkers, commitbatch);
+
+        if (standIn != null)
         {
-            try {
-                workerThreads[i].join();
-            }
-            catch (InterruptedException ie)
-            {
-                System.err.println("ERROR: worker " + i + " - " +
-                        ie.getMessage());
-                System.exit(4);
-            }
+            standIn.report();
+            standIn.stop();
         }
 
+        if (replayFile != null)
+            replayFile.close();
+
         /*
          * Close the CSV files if we are writing them.
          */
@@ -166,1178 +446,7080 @@ public class Main
                 System.exit(3);
             }
         }
-        Long sessionendTimestamp = System.currentTimeMillis();
-        System.out.println("Exec "+ flag + "耗时: "+ (sessionendTimestamp-sessionstartTimestamp) + "ms");
     } // End of main()
-    public static void orderLineAppend(StringBuffer buf)
-            throws IOException
+
+    /*
+     * runLoad(mode, workers, commitbatch)
+     *
+     *     One complete load: open the sessions, run all workers until
+     *     the scheduler runs out of jobs (or time) and print the reports.
+     *     Called once by main(), or once per cell by runSweep().
+     */
+    private static LoadResult runLoad(LoadMode mode, int numWorkers,
+                                      int commitbatch)
     {
-        synchronized(orderLineCSV)
+        int     i;
+
+        Main.numWorkers = numWorkers;
+        int[] rampSteps = ramp ? RampController.steps(numWorkers) : null;
+        int runDuration = ramp ? rampSteps.length * rampHold + 1 : duration;
+        startGate = new CountDownLatch(1);
+        timeBounded = false;
+        pacer = null;
+        batchTuner = null;
+        activeLimit = null;
+        failedWorkers.set(0);
+
+        if (autoBatch)
         {
-            orderLineCSV.write(buf.toString());
+            if (mode.unit == LoadMode.PER_ORDER)
+                System.out.println("autoBatch: mode " + mode.name +
+                        " commits every order, nothing to tune");
+            else
+                batchTuner = new BatchTuner(mode.name,
+                        mode.batchRows(commitbatch), autoBatchMin,
+                        autoBatchMax, autoBatchInterval, autoBatchMaxLatency);
         }
-        buf.setLength(0);
-    }
 
+        /*
+         * In pipeline mode the generator threads take the jobs and the
+         * workers only execute what they generate.
+         */
+        OrderLinePipeline pipeline = null;
+        Thread[] generatorThreads = new Thread[Math.max(numGenerators, 0)];
+        if (importFiles != null)
+        {
+            try
+            {
+                importPlan = new CSVImportPlan(importFiles,
+                        importChunkBytes, numWorkers);
+            }
+            catch (IOException ie)
+            {
+                System.err.println("ERROR: " + ie.getMessage());
+                System.exit(3);
+            }
+            System.out.println(importPlan.describe());
+        }
 
-    public static int getNextJob()
-    {
-        int     job;
-
-        synchronized(nextJobLock)
+        if (numGenerators > 0)
         {
-            if (nextJob > numWarehouses)
-                job = -1;
-            else
-                job = nextJob++;
+            pipeline = new OrderLinePipeline((pipelineDepth > 0) ?
+                    pipelineDepth : 2 * numWorkers, numGenerators,
+                    numWorkers, (batchTuner != null) ? batchTuner.maxRows() :
+                            mode.batchRows(commitbatch));
+            scheduler = new JobScheduler(numWarehouses, chunkOrders,
+                    numGenerators, runDuration > 0);
+        }
+        else
+        {
+            scheduler = new JobScheduler(numWarehouses, chunkOrders,
+                    numWorkers, runDuration > 0);
         }
+        if (importFiles == null && scheduler.chunkOrders() < chunkOrders)
+            System.out.println("chunkOrders: " + scheduler.chunkOrders() +
+                    " so that every worker starts with its own chunks");
 
-        return job;
-    }
+        /*
+         * With fewer pooled connections than workers, the connections
+         * become sessions that the worker tasks borrow one job at a
+         * time. That is how thousands of virtual thread workers share
+         * a bounded number of database sessions.
+         */
+        int numSessions = numWorkers;
+        if (pipeline == null && poolSize > 0 && poolSize < numWorkers)
+            numSessions = poolSize;
 
-    public static int getNumWarehouses()
-    {
-        return numWarehouses;
-    }
+        /*
+         * Open all sessions in parallel and have them validated and
+         * warmed up before any worker is started.
+         */
+        long readyStartTimestamp = System.currentTimeMillis();
+        workers = openSessions(numSessions, connectThreads, mode.name,
+                commitbatch, sessionInit, warmUp);
 
-    public static String iniGetString(String name)
-    {
-        String  strVal = null;
+        /*
+         * Create the number of requested workers and start them. They
+         * all wait at the start gate.
+         */
+        workerThreads = new Thread[numWorkers];
+        for (i = 0; i < numSessions; i++)
+        {
+            if (pipeline != null)
+                workers[i].setPipeline(pipeline);
+            if (numSessions == numWorkers)
+            {
+                workerThreads[i] = newThread(workers[i], "worker-" + i);
+                workerThreads[i].start();
+            }
+        }
 
-        for (int i = 0; i < argv.length - 1; i += 2)
+        SessionPool sessionPool = null;
+        if (numSessions < numWorkers)
         {
-            if (name.toLowerCase().equals(argv[i].toLowerCase()))
+            sessionPool = new SessionPool(workers);
+            for (i = 0; i < numWorkers; i++)
             {
-                strVal = argv[i + 1];
-                break;
+                workerThreads[i] = newThread(new PooledWorkerTask(i,
+                        sessionPool), "worker-" + i);
+                workerThreads[i].start();
             }
         }
 
-        if (strVal == null)
-            strVal = ini.getProperty(name);
+        for (i = 0; i < numGenerators; i++)
+        {
+            generatorThreads[i] = new Thread(new BatchGenerator(i,
+                    rnd.newRandom(), mode, commitbatch, pipeline));
+            generatorThreads[i].start();
+        }
 
-        if (strVal == null)
-            System.out.println(name + " (not defined)");
-        else
-        if (name.equals("password"))
-            System.out.println(name + "=***********");
-        else
-            System.out.println(name + "=" + strVal);
-        return strVal;
-    }
+        Long sessionstartTimestamp = System.currentTimeMillis();
+        System.out.println("Sessions ready: " + numSessions + " in " +
+                (sessionstartTimestamp - readyStartTimestamp) + "ms");
+        if (runDuration > 0)
+        {
+            deadlineNanos = System.nanoTime() + runDuration * 1000000000L;
+            timeBounded = true;
+        }
+        if (rate > 0)
+            pacer = new OpenLoopPacer(rate);
+        if (batchTuner != null)
+            batchTuner.begin();
 
-    private static String iniGetString(String name, String defVal)
-    {
-        String  strVal = null;
+        /*
+         * The AIMD controller lets only as many workers run a
+         * transaction at a time as it currently allows, the others park.
+         */
+        ConcurrencyController aimdController = null;
+        Thread aimdThread = null;
+        if (aimd)
+        {
+            activeLimit = new AdaptiveLimit(Math.min(numWorkers, aimdStart));
+            aimdController = new ConcurrencyController(activeLimit, workers,
+                    numWorkers, aimdInterval, aimdMaxCommitLatency,
+                    aimdMaxRetryPct);
+            aimdThread = new Thread(aimdController, "aimd");
+            aimdThread.setDaemon(true);
+            aimdThread.start();
+        }
 
-        for (int i = 0; i < argv.length - 1; i += 2)
+        /*
+         * A ramp uses the same gate to step the number of active
+         * workers up, keeping every session and its statements.
+         */
+        RampController rampController = null;
+        Thread rampThread = null;
+        if (ramp)
         {
-            if (name.toLowerCase().equals(argv[i].toLowerCase()))
+            activeLimit = new AdaptiveLimit(rampSteps[0]);
+            rampController = new RampController(activeLimit, workers,
+                    rampSteps, rampHold);
+            rampThread = new Thread(rampController, "ramp");
+            rampThread.setDaemon(true);
+            rampThread.start();
+        }
+        startGate.countDown();
+
+        IntervalReporter reporter = null;
+        Thread reporterThread = null;
+        if (reportInterval > 0)
+        {
+            try
             {
-                strVal = argv[i + 1];
-                break;
+                reporter = new IntervalReporter(workers, reportInterval,
+                        reportFile);
+            }
+            catch (IOException ie)
+            {
+                System.err.println("ERROR: " + ie.getMessage());
+                System.exit(3);
             }
+            reporterThread = new Thread(reporter, "reporter");
+            reporterThread.setDaemon(true);
+            reporterThread.start();
         }
 
-        if (strVal == null)
-            strVal = ini.getProperty(name);
-
-        if (strVal == null)
+        for (i = 0; i < numGenerators; i++)
         {
-            System.out.println(name + " (not defined - using default '" +
-                    defVal + "')");
-            return defVal;
+            try {
+                generatorThreads[i].join();
+            }
+            catch (InterruptedException ie)
+            {
+                System.err.println("ERROR: generator " + i + " - " +
+                        ie.getMessage());
+                System.exit(4);
+            }
         }
-        else
-        if (name.equals("password"))
-            System.out.println(name + "=***********");
-        else
-            System.out.println(name + "=" + strVal);
-        return strVal;
-    }
 
-    private static int iniGetInt(String name)
-    {
-        String  strVal = iniGetString(name);
+        for (i = 0; i < numWorkers; i++)
+        {
+            try {
+                workerThreads[i].join();
+            }
+            catch (InterruptedException ie)
+            {
+                System.err.println("ERROR: worker " + i + " - " +
+                        ie.getMessage());
+                System.exit(4);
+            }
+        }
+        if (sessionPool != null)
+            sessionPool.closeAll();
+        if (reporter != null)
+            reporter.stop(reporterThread);
+        if (aimdController != null)
+            aimdController.stop(aimdThread);
+        if (rampController != null)
+            rampController.stop(rampThread);
 
-        if (strVal == null)
-            return 0;
-        return Integer.parseInt(strVal);
+        Long sessionendTimestamp = System.currentTimeMillis();
+        long elapsedMillis = sessionendTimestamp - sessionstartTimestamp;
+        System.out.println("Ready "+ mode.name + "耗时: "+ (sessionstartTimestamp-readyStartTimestamp) + "ms");
+        System.out.println("Exec "+ mode.name + "耗时: "+ elapsedMillis + "ms");
+        reportWorkerTimes(elapsedMillis);
+        reportLatencies(mode);
+        if (batchTuner != null)
+            batchTuner.report(mode);
+        if (pacer != null)
+            reportRate(rate, elapsedMillis);
+        return new LoadResult(mode, numWorkers, commitbatch, elapsedMillis,
+                workers);
     }
 
-    private static int iniGetInt(String name, int defVal)
+    /*
+     * runSweep(commitbatch)
+     *
+     *     Run every mode of sweepModes with every combination of
+     *     sweepWorkers and sweepCommitbatch, resetting the table before
+     *     each cell, and print the matrix of rows/s and p99 transaction
+     *     latency at the end. Modes that change existing rows get the
+     *     table reloaded with sweepReload first, which is not measured.
+     */
+    private static void runSweep(int commitbatch)
     {
-        String  strVal = iniGetString(name);
+        String[]    modeNames = iniGetString("sweepModes",
+                "insert,update_batch,delete_batch,insert_update," +
+                "insert_update_bucket,upsert,insert_batch_value," +
+                "update_batch_value,delete_batch_value," +
+                "upsert_batch_value").split(",");
+        int[]       workerList = parseIntList(iniGetString("sweepWorkers",
+                String.valueOf(numWorkers)));
+        int[]       batchList = parseIntList(iniGetString("sweepCommitbatch",
+                String.valueOf(commitbatch)));
+        String      resetSql = iniGetString("sweepReset",
+                "TRUNCATE TABLE bmsql_order_line");
+        LoadMode    reload = LoadMode.forName(
+                iniGetString("sweepReload", "copy"));
+        String      sweepFile = iniGetString("sweepFile");
+        int         reloadWorkers = numWorkers;
+        List<LoadResult> results = new ArrayList<LoadResult>();
 
-        if (strVal == null)
-            return defVal;
-        return Integer.parseInt(strVal);
-    }
-}
+        if (reload == null || reload.keysOnly)
+        {
+            System.err.println("ERROR: sweepReload must be a mode that " +
+                    "inserts complete rows");
+            System.exit(1);
+        }
+        for (String name : modeNames)
+        {
+            if (LoadMode.forName(name) == null)
+            {
+                System.err.println("ERROR: unknown sweep mode '" + name + "'");
+                System.exit(1);
+            }
+        }
 
+        for (String name : modeNames)
+        {
+            LoadMode    mode = LoadMode.forName(name);
 
-class jTPCCRandom
-{
-    private static final char[] aStringChars = {
-            'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
-            'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z',
-            'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm',
-            'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z',
-            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
-    private static final String[] cLastTokens = {
-            "BAR", "OUGHT", "ABLE", "PRI", "PRES",
-            "ESE", "ANTI", "CALLY", "ATION", "EING"};
+            for (int w : workerList)
+            {
+                for (int cb : batchList)
+                {
+                    System.out.printf("%nSweep: %s loadWorkers=%d " +
+                            "commitbatch=%d%n", mode.name, w, cb);
+                    resetTable(resetSql);
+                    if (mode.keysOnly)
+                        runLoad(reload, reloadWorkers, commitbatch);
+                    results.add(runLoad(mode, w, cb));
 
-    private static long         nURandCLast;
-    private static long         nURandCC_ID;
-    private static long         nURandCI_ID;
-    private static boolean      initialized = false;
+                    /*
+                     * Modes that commit every order ignore commitbatch.
+                     */
+                    if (mode.unit == LoadMode.PER_ORDER)
+                        break;
+                }
+            }
+        }
+
+        LoadResult.printMatrix(results, modeNames, workerList, batchList);
+        if (sweepFile != null)
+        {
+            try
+            {
+                LoadResult.writeCSV(results, sweepFile);
+            }
+            catch (IOException ie)
+            {
+                System.err.println("ERROR: " + ie.getMessage());
+            }
+        }
+    }
+
+    private static int[] parseIntList(String list)
+    {
+        String[]    parts = list.split(",");
+        int[]       values = new int[parts.length];
 
-    private     Random  random;
+        for (int i = 0; i < parts.length; i++)
+            values[i] = Integer.parseInt(parts[i].trim());
+        return values;
+    }
 
     /*
-     * jTPCCRandom()
+     * resetTable(sql)
      *
-     *     Used to create the master jTPCCRandom() instance for loading
-     *     the database. See below.
+     *     Run the sweep's reset statements (';'-separated) on a
+     *     connection of their own.
      */
-    jTPCCRandom()
+    private static void resetTable(String sql)
     {
-        if (initialized)
-            throw new IllegalStateException("Global instance exists");
+        try
+        {
+            Connection  conn = DriverManager.getConnection(db, dbProps);
+            Statement   stmt = conn.createStatement();
 
-        this.random = new Random(System.nanoTime());
-        jTPCCRandom.nURandCLast = nextLong(0, 255);
-        jTPCCRandom.nURandCC_ID = nextLong(0, 1023);
-        jTPCCRandom.nURandCI_ID = nextLong(0, 8191);
+            for (String part : sql.split(";"))
+            {
+                if (part.trim().length() > 0)
+                    stmt.execute(part);
+            }
+            stmt.close();
+            conn.close();
+        }
+        catch (SQLException se)
+        {
+            System.err.println("ERROR: reset failed - " + se.getMessage());
+            System.exit(3);
+        }
+    }
+    public static CSVFileSet getOrderLineCSV()
+    {
+        return orderLineCSV;
+    }
 
-        initialized = true;
+    public static CSVImportPlan getImportPlan()
+    {
+        return importPlan;
+    }
+
+    public static OrderLineReplayFile getReplayFile()
+    {
+        return replayFile;
+    }
+
+    public static String getCsvNullValue()
+    {
+        return csvNullValue;
     }
 
     /*
-     * jTPCCRandom(CLoad)
-     *
-     *     Used to create the master jTPCCRandom instance for running
-     *     a benchmark load.
+     * findImportFiles(dir)
      *
-     *     TPC-C 2.1.6 defines the rules for picking the C values of
-     *     the non-uniform random number generator. In particular
-     *     2.1.6.1 defines what numbers for the C value for generating
-     *     C_LAST must be excluded from the possible range during run
-     *     time, based on the number used during the load.
+     *     The order-line CSV files the CSV output wrote into dir:
+     *     order-line.csv or its per worker and per warehouse parts,
+     *     plain or gzip compressed (.csv.gz).
      */
-    jTPCCRandom(long CLoad)
+    private static List<String> findImportFiles(String dir)
     {
-        long delta;
-
-        if (initialized)
-            throw new IllegalStateException("Global instance exists");
-
-        this.random = new Random(System.nanoTime());
-        jTPCCRandom.nURandCC_ID = nextLong(0, 1023);
-        jTPCCRandom.nURandCI_ID = nextLong(0, 8191);
+        List<String>    files = new ArrayList<String>();
+        File[]          list = new File(dir).listFiles();
 
-        do
+        if (list != null)
         {
-            jTPCCRandom.nURandCLast = nextLong(0, 255);
-
-            delta = Math.abs(jTPCCRandom.nURandCLast - CLoad);
-            if (delta == 96 || delta == 112)
-                continue;
-            if (delta < 65 || delta > 119)
-                continue;
-            break;
-        } while(true);
-
-        initialized = true;
+            for (File f : list)
+            {
+                if (f.isFile() && f.getName().startsWith("order-line") &&
+                        (f.getName().endsWith(".csv") ||
+                                f.getName().endsWith(".csv.gz")))
+                    files.add(f.getPath());
+            }
+        }
+        Collections.sort(files);
+        return files;
     }
 
-    private jTPCCRandom(jTPCCRandom parent)
+
+    public static LoadJob getNextJob(int worker)
     {
-        this.random = new Random(System.nanoTime());
+        if (isTimeUp())
+            return null;
+        return scheduler.nextJob(worker);
     }
 
     /*
-     * newRandom()
+     * isTimeUp()
      *
-     *     Creates a derived random data generator to be used in another
-     *     thread of the current benchmark load or run process. As per
-     *     TPC-C 2.1.6 all terminals during a run must use the same C
-     *     values per field. The jTPCCRandom Class therefore cannot
-     *     generate them per instance, but each thread's instance must
-     *     inherit those numbers from a global instance.
+     *     True once the time limit of a duration run has passed.
      */
-    jTPCCRandom newRandom()
+    public static boolean isTimeUp()
     {
-        return new jTPCCRandom(this);
+        return timeBounded && System.nanoTime() - deadlineNanos >= 0;
+    }
+
+    public static OpenLoopPacer getPacer()
+    {
+        return pacer;
+    }
+
+    public static BatchTuner getBatchTuner()
+    {
+        return batchTuner;
+    }
+
+    public static AdaptiveLimit getActiveLimit()
+    {
+        return activeLimit;
     }
 
+    public static int getMaxRetries()
+    {
+        return maxRetries;
+    }
 
     /*
-     * nextLong(x, y)
+     * workerFailed()
      *
-     *     Produce a random number uniformly distributed in [x .. y]
+     *     Called by a worker or pooled task that gave up on an error, so
+     *     the ramp can tell a step that lost workers from a slow one.
      */
-    public long nextLong(long x, long y)
+    public static void workerFailed()
+    {
+        failedWorkers.incrementAndGet();
+    }
+
+    public static int getFailedWorkers()
     {
-        return (long)(random.nextDouble() * (y - x + 1) + x);
+        return failedWorkers.get();
     }
 
     /*
-     * nextInt(x, y)
+     * awaitStart()
      *
-     *     Produce a random number uniformly distributed in [x .. y]
+     *     Block the calling worker until main() opens the start gate.
      */
-    public int nextInt(int x, int y)
+    public static void awaitStart()
     {
-        return (int)(random.nextDouble() * (y - x + 1) + x);
+        try
+        {
+            startGate.await();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /*
-     * getAString(x, y)
-     *
-     *     Procude a random alphanumeric string of length [x .. y].
+     * openSessions(num, connectThreads, ...)
      *
-     *     Note: TPC-C 4.3.2.2 asks for an "alhpanumeric" string.
-     *     Comment 1 about the character set does NOT mean that this
-     *     function must eventually produce 128 different characters,
-     *     only that the "character set" used to store this data must
-     *     be able to represent 128 different characters. '#@!%%ÄÖß'
-     *     is not an alphanumeric string. We can save ourselves a lot
-     *     of UTF8 related trouble by producing alphanumeric only
-     *     instead of cartoon style curse-bubbles.
+     *     Open, validate and warm up num sessions using up to
+     *     connectThreads threads. The random generators are split off
+     *     in order beforehand, so a seeded run gets the same generator
+     *     for the same session no matter which connection is done first.
      */
-    public String getAString(long x, long y)
+    private static LoadDataWorker[] openSessions(int num, int connectThreads,
+            final String flag, final int commitbatch, String sessionInit,
+            final boolean warmUp)
     {
-        String result = new String();
-        long len = nextLong(x, y);
-        long have = 1;
+        LoadDataWorker[]    sessions = new LoadDataWorker[num];
+        final jTPCCRandom[] rnds = new jTPCCRandom[num];
+        final String[]      initSql = (sessionInit == null) ? new String[0] :
+                sessionInit.split(";");
+        List<Future<LoadDataWorker>> futures =
+                new ArrayList<Future<LoadDataWorker>>(num);
+        ExecutorService     connector = Executors.newFixedThreadPool(
+                Math.max(1, Math.min(connectThreads, num)));
 
-        if (y <= 0)
-            return result;
+        for (int i = 0; i < num; i++)
+            rnds[i] = rnd.newRandom();
 
-        result += aStringChars[(int)nextLong(0, 51)];
-        while (have < len)
+        try
         {
-            result += aStringChars[(int)nextLong(0, 61)];
-            have++;
-        }
+            for (int i = 0; i < num; i++)
+            {
+                final int   session = i;
 
-        return result;
+                futures.add(connector.submit(new Callable<LoadDataWorker>()
+                {
+                    public LoadDataWorker call()
+                            throws SQLException
+                    {
+                        return openSession(session, rnds[session], flag,
+                                commitbatch, initSql, warmUp);
+                    }
+                }));
+            }
+            for (int i = 0; i < num; i++)
+                sessions[i] = futures.get(i).get();
+        }
+        catch (ExecutionException ee)
+        {
+            System.err.println("ERROR: " + ee.getCause().getMessage());
+            System.exit(3);
+        }
+        catch (InterruptedException ie)
+        {
+            System.err.println("ERROR: " + ie.getMessage());
+            System.exit(3);
+        }
+        finally
+        {
+            connector.shutdownNow();
+        }
+        return sessions;
     }
 
-    /*
-     * getNString(x, y)
-     *
-     *     Produce a random numeric string of length [x .. y].
-     */
-    public String getNString(long x, long y)
+    private static LoadDataWorker openSession(int session, jTPCCRandom rnd,
+            String flag, int commitbatch, String[] initSql, boolean warmUp)
+            throws SQLException
     {
-        String result = new String();
-        long len = nextLong(x, y);
-        long have = 0;
+        Connection      dbConn;
+        LoadDataWorker  worker;
+
+        /*
+         * Recording only generates rows into the replay file, it does
+         * not need a database session.
+         */
+        if (flag.equals("record"))
+            return new LoadDataWorker(session, csvNullValue, rnd, flag);
 
-        while (have < len)
+        dbConn = DriverManager.getConnection(db, dbProps);
+        if (!dbConn.isValid(10))
+            throw new SQLException("session " + session +
+                    ": connection failed validation");
+        dbConn.setAutoCommit(false);
+
+        if (initSql.length > 0)
         {
-            result += (char)(nextLong((long)'0', (long)'9'));
-            have++;
+            Statement   stmt = dbConn.createStatement();
+
+            for (String sql : initSql)
+            {
+                if (sql.trim().length() > 0)
+                    stmt.execute(sql);
+            }
+            stmt.close();
+            dbConn.commit();
         }
 
-        return result;
+        if (writeCSV)
+            return new LoadDataWorker(session, csvNullValue, rnd, flag);
+
+        worker = new LoadDataWorker(session, dbConn, rnd, flag, commitbatch);
+        if (warmUp)
+            worker.warmUp();
+        return worker;
     }
 
     /*
-     * getItemID()
+     * initVirtualThreads()
      *
-     *     Produce a non uniform random Item ID.
+     *     Look up the virtual thread builder. On a JDK without virtual
+     *     threads the workers stay on platform threads.
      */
-    public int getItemID()
+    private static void initVirtualThreads()
     {
-        return (int)((((nextLong(0, 8191) | nextLong(1, 100000)) + nURandCI_ID)
-                % 100000) + 1);
+        try
+        {
+            virtualBuilder = Thread.class.getMethod("ofVirtual").invoke(null);
+            virtualUnstarted = Class.forName("java.lang.Thread$Builder")
+                    .getMethod("unstarted", Runnable.class);
+        }
+        catch (Exception e)
+        {
+            virtualBuilder = null;
+            virtualUnstarted = null;
+            System.err.println("WARNING: virtual threads not available in " +
+                    "Java " + System.getProperty("java.version") +
+                    ", using platform threads");
+        }
     }
 
     /*
-     * getCustomerID()
+     * newThread(task, name)
      *
-     *     Produce a non uniform random Customer ID.
+     *     An unstarted worker thread, virtual if so configured.
      */
-    public int getCustomerID()
+    private static Thread newThread(Runnable task, String name)
     {
-        return (int)((((nextLong(0, 1023) | nextLong(1, 3000)) + nURandCC_ID)
-                % 3000) + 1);
+        Thread  t;
+
+        if (virtualBuilder != null)
+        {
+            try
+            {
+                t = (Thread)virtualUnstarted.invoke(virtualBuilder, task);
+                t.setName(name);
+                return t;
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+        }
+        return new Thread(task, name);
     }
 
     /*
-     * getCLast(num)
+     * reportWorkerTimes(elapsed)
      *
-     *     Produce the syllable representation for C_LAST of [0 .. 999]
+     *     Print how long every worker spent on jobs and how long it sat
+     *     idle, the latter including the time after it ran out of work
+     *     while others were still busy.
      */
-    public String getCLast(int num)
+    private static void reportWorkerTimes(long elapsedMillis)
     {
-        String result = new String();
+        long    busyTotal = 0;
+        int     numSessions = workers.length;
 
-        for (int i = 0; i < 3; i++)
+        for (int i = 0; i < numSessions; i++)
         {
-            result = cLastTokens[num % 10] + result;
-            num /= 10;
-        }
+            long busy = workers[i].getBusyNanos() / 1000000L;
 
-        return result;
+            busyTotal += busy;
+            System.out.printf("Worker %03d: jobs %6d stolen %6d " +
+                            "busy %8dms idle %8dms%n",
+                    i, workers[i].getJobsDone(), workers[i].getJobsStolen(),
+                    busy, Math.max(0, elapsedMillis - busy));
+        }
+        if (numSessions > 0 && elapsedMillis > 0)
+            System.out.printf("Worker utilization: %.1f%%%n",
+                    100.0 * busyTotal / ((double)elapsedMillis * numSessions));
     }
 
     /*
-     * getCLast()
+     * reportLatencies(mode)
      *
-     *     Procude a non uniform random Customer Last Name.
+     *     Merge the per worker latency histograms and print the
+     *     percentiles of every operation the mode used.
      */
-    public String getCLast()
-    {
-        long num;
-        num = (((nextLong(0, 255) | nextLong(0, 999)) + nURandCLast) % 1000);
-        return getCLast((int)num);
-    }
-
-    public String getState()
+    private static void reportLatencies(LoadMode mode)
     {
-        String result = new String();
-
-        result += (char)nextInt((int)'A', (int)'Z');
-        result += (char)nextInt((int)'A', (int)'Z');
+        for (int op = 0; op < LoadDataWorker.OP_NAMES.length; op++)
+        {
+            LatencyHistogram    merged = new LatencyHistogram();
 
-        return result;
+            for (LoadDataWorker w : workers)
+                merged.add(w.getLatency(op));
+            if (merged.getCount() == 0)
+                continue;
+            System.out.printf("Latency %s %s: count %d " +
+                            "p50 %.3fms p90 %.3fms p99 %.3fms " +
+                            "p99.9 %.3fms max %.3fms%n",
+                    mode.name, LoadDataWorker.OP_NAMES[op],
+                    merged.getCount(),
+                    merged.getValueAtPercentile(50.0) / 1000.0,
+                    merged.getValueAtPercentile(90.0) / 1000.0,
+                    merged.getValueAtPercentile(99.0) / 1000.0,
+                    merged.getValueAtPercentile(99.9) / 1000.0,
+                    merged.getMax() / 1000.0);
+        }
     }
 
     /*
-     * Methods to retrieve the C values used.
+     * reportRate(rate, elapsed)
+     *
+     *     Compare the transactions actually run with the target rate. If
+     *     the load fell behind, the intendedResponse latencies show by
+     *     how much.
      */
-    public long getNURandCLast()
+    private static void reportRate(int rate, long elapsedMillis)
     {
-        return nURandCLast;
+        long    done = 0;
+
+        for (LoadDataWorker w : workers)
+            done += w.getLatency(LoadDataWorker.OP_INTENDED).getCount();
+        if (elapsedMillis > 0)
+            System.out.printf("Rate: target %d/s achieved %.1f/s%n",
+                    rate, done * 1000.0 / elapsedMillis);
     }
 
-    public long getNURandCC_ID()
+    public static int getNumWarehouses()
     {
-        return nURandCC_ID;
+        return numWarehouses;
     }
 
-    public long getNURandCI_ID()
+    public static int getCopyIntSize()
     {
-        return nURandCI_ID;
+        return copyIntSize;
     }
-} // end jTPCCRandom
 
+    public static String iniGetString(String name)
+    {
+        String  strVal = null;
 
-class LoadDataWorker implements Runnable {
-    private int worker;
-    private Connection dbConn;
-    private jTPCCRandom rnd;
-    private String flag;
-    private int commitbatch;
-
-    private StringBuffer sb;
-    private Formatter fmt;
+        for (int i = 0; i < argv.length - 1; i += 2)
+        {
+            if (name.toLowerCase().equals(argv[i].toLowerCase()))
+            {
+                strVal = argv[i + 1];
+                break;
+            }
+        }
+
+        if (strVal == null)
+            strVal = ini.getProperty(name);
+
+        if (strVal == null)
+            System.out.println(name + " (not defined)");
+        else
+        if (name.equals("password"))
+            System.out.println(name + "=***********");
+        else
+            System.out.println(name + "=" + strVal);
+        return strVal;
+    }
+
+    private static String iniGetString(String name, String defVal)
+    {
+        String  strVal = null;
+
+        for (int i = 0; i < argv.length - 1; i += 2)
+        {
+            if (name.toLowerCase().equals(argv[i].toLowerCase()))
+            {
+                strVal = argv[i + 1];
+                break;
+            }
+        }
+
+        if (strVal == null)
+            strVal = ini.getProperty(name);
+
+        if (strVal == null)
+        {
+            System.out.println(name + " (not defined - using default '" +
+                    defVal + "')");
+            return defVal;
+        }
+        else
+        if (name.equals("password"))
+            System.out.println(name + "=***********");
+        else
+            System.out.println(name + "=" + strVal);
+        return strVal;
+    }
+
+    private static int iniGetInt(String name)
+    {
+        String  strVal = iniGetString(name);
+
+        if (strVal == null)
+            return 0;
+        return Integer.parseInt(strVal);
+    }
+
+    private static int iniGetInt(String name, int defVal)
+    {
+        String  strVal = iniGetString(name);
+
+        if (strVal == null)
+            return defVal;
+        return Integer.parseInt(strVal);
+    }
+}
+
+
+class jTPCCRandom
+{
+    private static final char[] aStringChars = {
+            'A', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M',
+            'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W', 'X', 'Y', 'Z',
+            'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', 'j', 'k', 'l', 'm',
+            'n', 'o', 'p', 'q', 'r', 's', 't', 'u', 'v', 'w', 'x', 'y', 'z',
+            '0', '1', '2', '3', '4', '5', '6', '7', '8', '9'};
+    private static final byte[] aStringBytes =
+            new String(aStringChars).getBytes(
+                    java.nio.charset.StandardCharsets.US_ASCII);
+    private static final String[] cLastTokens = {
+            "BAR", "OUGHT", "ABLE", "PRI", "PRES",
+            "ESE", "ANTI", "CALLY", "ATION", "EING"};
+
+    private static long         nURandCLast;
+    private static long         nURandCC_ID;
+    private static long         nURandCI_ID;
+    private static boolean      initialized = false;
+    private static boolean      seeded = false;
+    private static long         baseSeed;
+
+    /*
+     * Load timestamp used for ol_delivery_d when seeded, so that two
+     * seeded runs produce byte identical data (2016-01-01 00:00:00 UTC).
+     */
+    private static final long   SEEDED_LOAD_TIME = 1451606400000L;
+
+    /*
+     * Pool of random alphanumeric bytes, filled once by the global
+     * instance. getAString() and friends hand out random windows of
+     * it instead of drawing one random number per character.
+     */
+    private static final int    A_STRING_POOL_SIZE = 1024 * 1024;
+    private static byte[]       aStringPool;
+
+    private     SplittableRandom    random;
+    private     byte[]              scratch = new byte[64];
+
+    /*
+     * jTPCCRandom()
+     *
+     *     Used to create the master jTPCCRandom() instance for loading
+     *     the database. See below.
+     */
+    jTPCCRandom()
+    {
+        if (initialized)
+            throw new IllegalStateException("Global instance exists");
+
+        this.random = newEngine();
+        jTPCCRandom.nURandCLast = nextLong(0, 255);
+        jTPCCRandom.nURandCC_ID = nextLong(0, 1023);
+        jTPCCRandom.nURandCI_ID = nextLong(0, 8191);
+        fillAStringPool();
+
+        initialized = true;
+    }
+
+    /*
+     * jTPCCRandom(CLoad)
+     *
+     *     Used to create the master jTPCCRandom instance for running
+     *     a benchmark load.
+     *
+     *     TPC-C 2.1.6 defines the rules for picking the C values of
+     *     the non-uniform random number generator. In particular
+     *     2.1.6.1 defines what numbers for the C value for generating
+     *     C_LAST must be excluded from the possible range during run
+     *     time, based on the number used during the load.
+     */
+    jTPCCRandom(long CLoad)
+    {
+        long delta;
+
+        if (initialized)
+            throw new IllegalStateException("Global instance exists");
+
+        this.random = newEngine();
+        jTPCCRandom.nURandCC_ID = nextLong(0, 1023);
+        jTPCCRandom.nURandCI_ID = nextLong(0, 8191);
+        fillAStringPool();
+
+        do
+        {
+            jTPCCRandom.nURandCLast = nextLong(0, 255);
+
+            delta = Math.abs(jTPCCRandom.nURandCLast - CLoad);
+            if (delta == 96 || delta == 112)
+                continue;
+            if (delta < 65 || delta > 119)
+                continue;
+            break;
+        } while(true);
+
+        initialized = true;
+    }
+
+    private jTPCCRandom(jTPCCRandom parent)
+    {
+        this.random = parent.random.split();
+    }
+
+    /*
+     * setSeed(seed)
+     *
+     *     Make all generators deterministic. Must be called before the
+     *     global instance is created. Worker instances then get their
+     *     streams from reseed() and no longer depend on which thread
+     *     happens to load which warehouse.
+     */
+    static void setSeed(long seed)
+    {
+        if (initialized)
+            throw new IllegalStateException("Global instance exists");
+
+        seeded = true;
+        baseSeed = seed;
+    }
+
+    private void fillAStringPool()
+    {
+        byte[] pool = new byte[A_STRING_POOL_SIZE];
+
+        for (int i = 0; i < pool.length; i++)
+            pool[i] = aStringBytes[random.nextInt(62)];
+        aStringPool = pool;
+    }
+
+    private static SplittableRandom newEngine()
+    {
+        if (seeded)
+            return new SplittableRandom(baseSeed);
+        return new SplittableRandom(System.nanoTime());
+    }
+
+    /*
+     * reseed(key)
+     *
+     *     Restart this instance's stream from a value derived from the
+     *     global seed and the key. The loader keys one stream per order
+     *     (OrderLineBatch.orderKey()). A no-op unless a seed was
+     *     configured.
+     */
+    public void reseed(long key)
+    {
+        if (!seeded)
+            return;
+
+        long z = baseSeed + (key + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        this.random = new SplittableRandom(z ^ (z >>> 31));
+    }
+
+    public boolean isSeeded()
+    {
+        return seeded;
+    }
+
+    /*
+     * nowMillis()
+     *
+     *     The timestamp to store for "now" in generated rows. This is
+     *     the wall clock, or a fixed load time when seeded.
+     */
+    public long nowMillis()
+    {
+        if (seeded)
+            return SEEDED_LOAD_TIME;
+        return System.currentTimeMillis();
+    }
+
+    /*
+     * newRandom()
+     *
+     *     Creates a derived random data generator to be used in another
+     *     thread of the current benchmark load or run process. As per
+     *     TPC-C 2.1.6 all terminals during a run must use the same C
+     *     values per field. The jTPCCRandom Class therefore cannot
+     *     generate them per instance, but each thread's instance must
+     *     inherit those numbers from a global instance.
+     */
+    jTPCCRandom newRandom()
+    {
+        return new jTPCCRandom(this);
+    }
+
+
+    /*
+     * nextLong(x, y)
+     *
+     *     Produce a random number uniformly distributed in [x .. y]
+     */
+    public long nextLong(long x, long y)
+    {
+        return random.nextLong(x, y + 1);
+    }
+
+    /*
+     * nextInt(x, y)
+     *
+     *     Produce a random number uniformly distributed in [x .. y]
+     */
+    public int nextInt(int x, int y)
+    {
+        return random.nextInt(x, y + 1);
+    }
+
+    /*
+     * getAString(x, y)
+     *
+     *     Procude a random alphanumeric string of length [x .. y].
+     *
+     *     Note: TPC-C 4.3.2.2 asks for an "alhpanumeric" string.
+     *     Comment 1 about the character set does NOT mean that this
+     *     function must eventually produce 128 different characters,
+     *     only that the "character set" used to store this data must
+     *     be able to represent 128 different characters. '#@!%%ÄÖß'
+     *     is not an alphanumeric string. We can save ourselves a lot
+     *     of UTF8 related trouble by producing alphanumeric only
+     *     instead of cartoon style curse-bubbles.
+     */
+    public String getAString(long x, long y)
+    {
+        int len = (int)nextLong(x, y);
+
+        if (y <= 0 || len <= 0)
+            return "";
+
+        if (scratch.length < len)
+            scratch = new byte[len];
+        fillAString(scratch, 0, len);
+        return new String(scratch, 0, len,
+                java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+
+    /*
+     * fillAString(dst, off, len)
+     *
+     *     Write a random alphanumeric string of exactly len bytes into
+     *     dst at off, following the same rules as getAString(). The
+     *     first character is a letter, the rest is a random window of
+     *     the alphanumeric pool. No object is allocated.
+     */
+    public void fillAString(byte[] dst, int off, int len)
+    {
+        if (len <= 0)
+            return;
+
+        dst[off] = aStringBytes[random.nextInt(52)];
+        if (len > 1)
+        {
+            int start = random.nextInt(A_STRING_POOL_SIZE - len + 2);
+            System.arraycopy(aStringPool, start, dst, off + 1, len - 1);
+        }
+    }
+
+    /*
+     * getNString(x, y)
+     *
+     *     Produce a random numeric string of length [x .. y].
+     */
+    public String getNString(long x, long y)
+    {
+        int len = (int)nextLong(x, y);
+
+        if (len <= 0)
+            return "";
+
+        if (scratch.length < len)
+            scratch = new byte[len];
+        for (int i = 0; i < len; i++)
+            scratch[i] = (byte)('0' + random.nextInt(10));
+        return new String(scratch, 0, len,
+                java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+
+    /*
+     * getItemID()
+     *
+     *     Produce a non uniform random Item ID.
+     */
+    public int getItemID()
+    {
+        return (int)((((nextLong(0, 8191) | nextLong(1, 100000)) + nURandCI_ID)
+                % 100000) + 1);
+    }
+
+    /*
+     * getCustomerID()
+     *
+     *     Produce a non uniform random Customer ID.
+     */
+    public int getCustomerID()
+    {
+        return (int)((((nextLong(0, 1023) | nextLong(1, 3000)) + nURandCC_ID)
+                % 3000) + 1);
+    }
+
+    /*
+     * getCLast(num)
+     *
+     *     Produce the syllable representation for C_LAST of [0 .. 999]
+     */
+    public String getCLast(int num)
+    {
+        String result = new String();
+
+        for (int i = 0; i < 3; i++)
+        {
+            result = cLastTokens[num % 10] + result;
+            num /= 10;
+        }
+
+        return result;
+    }
+
+    /*
+     * getCLast()
+     *
+     *     Procude a non uniform random Customer Last Name.
+     */
+    public String getCLast()
+    {
+        long num;
+        num = (((nextLong(0, 255) | nextLong(0, 999)) + nURandCLast) % 1000);
+        return getCLast((int)num);
+    }
+
+    public String getState()
+    {
+        String result = new String();
+
+        result += (char)nextInt((int)'A', (int)'Z');
+        result += (char)nextInt((int)'A', (int)'Z');
+
+        return result;
+    }
+
+    /*
+     * Methods to retrieve the C values used.
+     */
+    public long getNURandCLast()
+    {
+        return nURandCLast;
+    }
+
+    public long getNURandCC_ID()
+    {
+        return nURandCC_ID;
+    }
+
+    public long getNURandCI_ID()
+    {
+        return nURandCI_ID;
+    }
+} // end jTPCCRandom
+
+
+/*
+ * PGCopyEncoder
+ *
+ *     Common interface of the COPY FROM STDIN row encoders, so that the
+ *     load code does not care whether it speaks text or binary COPY.
+ */
+interface PGCopyEncoder
+{
+    void beginCopy();
+    void beginRow();
+    void appendNull();
+    void appendInt(int val);
+    void appendNumeric(long cents);
+    void appendTimestamp(long millis);
+    void appendString(String str);
+    void appendBytes(byte[] src, int off, int len);
+    void endRow();
+    void endCopy();
+    int size();
+    void writeTo(OutputStream out) throws IOException;
+}
+
+
+/*
+ * PGCopyTextEncoder
+ *
+ *     Encodes rows in the COPY text format (tab separated, \N for NULL)
+ *     straight into a reusable byte array. Nothing is formatted through
+ *     java.util.Formatter and no per row String is built. With a comma
+ *     delimiter and the csvNullValue it writes the CSV files.
+ */
+class PGCopyTextEncoder implements PGCopyEncoder
+{
+    private byte[]      buf;
+    private int         pos = 0;
+    private boolean     firstField = true;
+    private byte        delimiter = '\t';
+    private byte[]      nullValue = {'\\', 'N'};
+
+    /*
+     * The "yyyy-mm-dd hh:mm:ss." part of the last encoded timestamp.
+     * It only changes once per second, so we format it once per second.
+     */
+    private long        tsSecond = Long.MIN_VALUE;
+    private byte[]      tsPrefix = new byte[20];
+
+    PGCopyTextEncoder(int initialSize)
+    {
+        this.buf = new byte[initialSize];
+    }
+
+    PGCopyTextEncoder(int initialSize, char delimiter, String nullValue)
+    {
+        this.buf = new byte[initialSize];
+        this.delimiter = (byte)delimiter;
+        this.nullValue = nullValue.getBytes(
+                java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+
+    public int size()
+    {
+        return pos;
+    }
+
+    public void beginCopy()
+    {
+    }
+
+    public void endCopy()
+    {
+    }
+
+    public void beginRow()
+    {
+        firstField = true;
+    }
+
+    public void endRow()
+    {
+        ensure(1);
+        buf[pos++] = '\n';
+    }
+
+    public void appendNull()
+    {
+        delimiter();
+        ensure(nullValue.length);
+        System.arraycopy(nullValue, 0, buf, pos, nullValue.length);
+        pos += nullValue.length;
+    }
+
+    public void appendInt(int val)
+    {
+        delimiter();
+        ensure(11);
+        if (val < 0)
+        {
+            if (val == Integer.MIN_VALUE)
+            {
+                appendAscii("-2147483648");
+                return;
+            }
+            buf[pos++] = '-';
+            val = -val;
+        }
+        pos = putDigits(val, pos);
+    }
+
+    /*
+     * appendNumeric(cents)
+     *
+     *     Append a NUMERIC with two decimal places given in hundredths.
+     */
+    public void appendNumeric(long cents)
+    {
+        delimiter();
+        ensure(24);
+        if (cents < 0)
+        {
+            buf[pos++] = '-';
+            cents = -cents;
+        }
+        pos = putDigits(cents / 100, pos);
+        buf[pos++] = '.';
+        buf[pos++] = (byte)('0' + (cents % 100) / 10);
+        buf[pos++] = (byte)('0' + cents % 10);
+    }
+
+    /*
+     * appendTimestamp(millis)
+     *
+     *     Append a timestamp in the JVM's local time zone, the same way
+     *     java.sql.Timestamp.toString() would print it.
+     */
+    public void appendTimestamp(long millis)
+    {
+        long    second = Math.floorDiv(millis, 1000L);
+        int     ms = (int)Math.floorMod(millis, 1000L);
+
+        if (second != tsSecond)
+        {
+            String ts = new java.sql.Timestamp(second * 1000L).toString();
+            for (int i = 0; i < 19; i++)
+                tsPrefix[i] = (byte)ts.charAt(i);
+            tsPrefix[19] = '.';
+            tsSecond = second;
+        }
+
+        delimiter();
+        ensure(23);
+        System.arraycopy(tsPrefix, 0, buf, pos, 20);
+        pos += 20;
+        buf[pos++] = (byte)('0' + ms / 100);
+        buf[pos++] = (byte)('0' + (ms / 10) % 10);
+        buf[pos++] = (byte)('0' + ms % 10);
+    }
+
+    /*
+     * appendString(str)
+     *
+     *     Append a string of single byte characters, escaping the
+     *     characters that are special in the COPY text format.
+     */
+    public void appendString(String str)
+    {
+        int     len = str.length();
+
+        delimiter();
+        ensure(len * 2);
+        for (int i = 0; i < len; i++)
+        {
+            char c = str.charAt(i);
+            switch (c)
+            {
+                case '\\':    buf[pos++] = '\\'; buf[pos++] = '\\'; break;
+                case '\t':     buf[pos++] = '\\'; buf[pos++] = 't'; break;
+                case '\n':     buf[pos++] = '\\'; buf[pos++] = 'n'; break;
+                case '\r':     buf[pos++] = '\\'; buf[pos++] = 'r'; break;
+                default:        buf[pos++] = (byte)c; break;
+            }
+        }
+    }
+
+    /*
+     * appendBytes(src, off, len)
+     *
+     *     Append single byte characters that are known to need no
+     *     escaping, like the alphanumeric strings from jTPCCRandom.
+     */
+    public void appendBytes(byte[] src, int off, int len)
+    {
+        delimiter();
+        ensure(len);
+        System.arraycopy(src, off, buf, pos, len);
+        pos += len;
+    }
+
+    /*
+     * writeTo(out)
+     *
+     *     Hand the encoded rows to the output stream and reset the
+     *     buffer for reuse.
+     */
+    public void writeTo(OutputStream out)
+            throws IOException
+    {
+        if (pos > 0)
+            out.write(buf, 0, pos);
+        pos = 0;
+    }
+
+    private void appendAscii(String str)
+    {
+        ensure(str.length());
+        for (int i = 0; i < str.length(); i++)
+            buf[pos++] = (byte)str.charAt(i);
+    }
+
+    private int putDigits(long val, int at)
+    {
+        int     ndigits = 1;
+
+        for (long v = val; v >= 10; v /= 10)
+            ndigits++;
+        for (int i = at + ndigits - 1; i >= at; i--)
+        {
+            buf[i] = (byte)('0' + val % 10);
+            val /= 10;
+        }
+        return at + ndigits;
+    }
+
+    private void delimiter()
+    {
+        if (firstField)
+        {
+            firstField = false;
+            return;
+        }
+        ensure(1);
+        buf[pos++] = delimiter;
+    }
+
+    private void ensure(int need)
+    {
+        if (pos + need > buf.length)
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + need));
+    }
+} // end PGCopyTextEncoder
+
+
+/*
+ * PGCopyBinaryEncoder
+ *
+ *     Encodes rows in the PGCOPY binary format into a reusable ByteBuffer.
+ *     Integers, timestamps and numerics are written in their wire
+ *     representation, so neither side has to format or parse text.
+ *
+ *     The width of integer columns must match the schema: 4 for the
+ *     PostgreSQL "integer" type, 8 for databases where INT is int8.
+ */
+class PGCopyBinaryEncoder implements PGCopyEncoder
+{
+    private static final byte[] SIGNATURE = {
+            'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte)0xff, '\r', '\n', 0};
+    private static final long   PG_EPOCH_MILLIS = 946684800000L;
+    private static final short  NUMERIC_POS = 0x0000;
+    private static final short  NUMERIC_NEG = 0x4000;
+
+    private ByteBuffer  buf;
+    private int         numFields;
+    private int         intSize;
+    private TimeZone    tz = TimeZone.getDefault();
+    private short[]     digits = new short[8];
+
+    PGCopyBinaryEncoder(int initialSize, int numFields, int intSize)
+    {
+        if (intSize != 4 && intSize != 8)
+            throw new IllegalArgumentException("integer size must be 4 or 8");
+        this.buf = ByteBuffer.allocate(initialSize);
+        this.numFields = numFields;
+        this.intSize = intSize;
+    }
+
+    public int size()
+    {
+        return buf.position();
+    }
+
+    public void beginCopy()
+    {
+        ensure(SIGNATURE.length + 8);
+        buf.put(SIGNATURE);
+        buf.putInt(0);          // flags
+        buf.putInt(0);          // header extension length
+    }
+
+    public void endCopy()
+    {
+        ensure(2);
+        buf.putShort((short)-1);
+    }
+
+    public void beginRow()
+    {
+        ensure(2);
+        buf.putShort((short)numFields);
+    }
+
+    public void endRow()
+    {
+    }
+
+    public void appendNull()
+    {
+        ensure(4);
+        buf.putInt(-1);
+    }
+
+    public void appendInt(int val)
+    {
+        ensure(4 + intSize);
+        buf.putInt(intSize);
+        if (intSize == 4)
+            buf.putInt(val);
+        else
+            buf.putLong(val);
+    }
+
+    /*
+     * appendTimestamp(millis)
+     *
+     *     Append a timestamp without time zone, being the local wall
+     *     clock time in microseconds since 2000-01-01.
+     */
+    public void appendTimestamp(long millis)
+    {
+        long    local = millis + tz.getOffset(millis);
+
+        ensure(12);
+        buf.putInt(8);
+        buf.putLong((local - PG_EPOCH_MILLIS) * 1000L);
+    }
+
+    /*
+     * appendNumeric(cents)
+     *
+     *     Append a NUMERIC with display scale 2 given in hundredths. The
+     *     value is sent as base 10000 digits: the integral part in as
+     *     many digits as needed, followed by one fractional digit.
+     */
+    public void appendNumeric(long cents)
+    {
+        short   sign = NUMERIC_POS;
+        long    intPart;
+        int     fracPart;
+        int     ndigits = 0;
+        int     weight;
+
+        if (cents < 0)
+        {
+            sign = NUMERIC_NEG;
+            cents = -cents;
+        }
+        intPart = cents / 100;
+        fracPart = (int)(cents % 100) * 100;
+
+        for (long v = intPart; v > 0; v /= 10000)
+            ndigits++;
+        weight = ndigits - 1;
+        for (int i = ndigits - 1; i >= 0; i--)
+        {
+            digits[i] = (short)(intPart % 10000);
+            intPart /= 10000;
+        }
+        if (fracPart != 0)
+            digits[ndigits++] = (short)fracPart;
+        while (ndigits > 0 && digits[ndigits - 1] == 0)
+            ndigits--;
+        if (ndigits == 0)
+        {
+            weight = 0;
+            sign = NUMERIC_POS;
+        }
+
+        ensure(4 + 8 + ndigits * 2);
+        buf.putInt(8 + ndigits * 2);
+        buf.putShort((short)ndigits);
+        buf.putShort((short)weight);
+        buf.putShort(sign);
+        buf.putShort((short)2);
+        for (int i = 0; i < ndigits; i++)
+            buf.putShort(digits[i]);
+    }
+
+    /*
+     * appendString(str)
+     *
+     *     Append a string of single byte characters.
+     */
+    public void appendString(String str)
+    {
+        int     len = str.length();
+
+        ensure(4 + len);
+        buf.putInt(len);
+        for (int i = 0; i < len; i++)
+            buf.put((byte)str.charAt(i));
+    }
+
+    /*
+     * appendBytes(src, off, len)
+     *
+     *     Append a string given as single byte characters.
+     */
+    public void appendBytes(byte[] src, int off, int len)
+    {
+        ensure(4 + len);
+        buf.putInt(len);
+        buf.put(src, off, len);
+    }
+
+    public void writeTo(OutputStream out)
+            throws IOException
+    {
+        if (buf.position() > 0)
+            out.write(buf.array(), buf.arrayOffset(), buf.position());
+        buf.clear();
+    }
+
+    private void ensure(int need)
+    {
+        if (buf.remaining() < need)
+        {
+            ByteBuffer  bigger = ByteBuffer.allocate(
+                    Math.max(buf.capacity() * 2, buf.position() + need));
+
+            buf.flip();
+            bigger.put(buf);
+            buf = bigger;
+        }
+    }
+} // end PGCopyBinaryEncoder
+
+
+/*
+ * CSVFileSet
+ *
+ *     The order-line CSV output. Rows go to one file, to one file per
+ *     worker or to one file per warehouse. Writers do not take a lock:
+ *     each write reserves its byte range with an atomic add on the
+ *     file's end position and then does positional FileChannel writes
+ *     into that range. Several workers can therefore fill the same file
+ *     at the same time, as long as every write holds whole rows.
+ *
+ *     With merge the part files are concatenated into the single file in
+ *     slot order at close, which for the warehouse layout gives a file
+ *     sorted by warehouse.
+ *
+ *     With a GzipBlockCompressor every write becomes one gzip member
+ *     instead. Members of a file are written in the order the writes
+ *     came in, and since gzip members can be concatenated, so can the
+ *     part files.
+ */
+class CSVFileSet
+{
+    public static final int     LAYOUT_SINGLE = 0;
+    public static final int     LAYOUT_WORKER = 1;
+    public static final int     LAYOUT_WAREHOUSE = 2;
+
+    private String              dir;
+    private String              base;
+    private int                 layout;
+    private boolean             merge;
+    private AtomicReferenceArray<FileChannel>   channels;
+    private AtomicLongArray     positions;
+    private GzipBlockCompressor gzip;
+    private AtomicReferenceArray<GzipBlockQueue>    gzipQueues;
+
+    CSVFileSet(String dir, String base, int layout, int slots, boolean merge,
+            GzipBlockCompressor gzip)
+            throws IOException
+    {
+        this.dir = dir;
+        this.base = base;
+        this.layout = layout;
+        this.merge = merge && layout != LAYOUT_SINGLE;
+        this.gzip = gzip;
+
+        if (layout == LAYOUT_SINGLE)
+            slots = 1;
+        this.channels = new AtomicReferenceArray<FileChannel>(slots);
+        this.positions = new AtomicLongArray(slots);
+        this.gzipQueues = new AtomicReferenceArray<GzipBlockQueue>(slots);
+
+        /*
+         * Per warehouse files are opened when the first row for them
+         * arrives, the others right away so errors show up early.
+         */
+        if (layout != LAYOUT_WAREHOUSE)
+        {
+            for (int i = 0; i < slots; i++)
+                channel(i);
+        }
+    }
+
+    /*
+     * parseLayout(name)
+     *
+     *     single, worker or warehouse; -1 for anything else.
+     */
+    public static int parseLayout(String name)
+    {
+        switch (name.trim().toLowerCase())
+        {
+            case "single":      return LAYOUT_SINGLE;
+            case "worker":      return LAYOUT_WORKER;
+            case "warehouse":   return LAYOUT_WAREHOUSE;
+            default:            return -1;
+        }
+    }
+
+    /*
+     * slot(worker, w_id)
+     *
+     *     The file that rows of the given worker and warehouse go to.
+     */
+    public int slot(int worker, int w_id)
+    {
+        switch (layout)
+        {
+            case LAYOUT_WORKER:     return worker;
+            case LAYOUT_WAREHOUSE:  return w_id - 1;
+            default:                return 0;
+        }
+    }
+
+    public CSVChannelWriter newWriter(int bufferSize)
+    {
+        return new CSVChannelWriter(this, bufferSize);
+    }
+
+    /*
+     * blockSize(bufferSize)
+     *
+     *     How much a writer should collect before a write: the gzip block
+     *     size when compressing, else the writer's own buffer size.
+     */
+    public int blockSize(int bufferSize)
+    {
+        return (gzip != null) ? gzip.blockSize() : bufferSize;
+    }
+
+    /*
+     * write(slot, src, off, len, direct)
+     *
+     *     Write len bytes as one contiguous range of the slot's file,
+     *     staged through the caller's direct buffer.
+     */
+    public void write(int slot, byte[] src, int off, int len,
+            ByteBuffer direct)
+            throws IOException
+    {
+        FileChannel ch = channel(slot);
+        long        at;
+        int         done = 0;
+
+        if (gzip != null)
+        {
+            gzipQueues.get(slot).add(gzip.submit(
+                    Arrays.copyOfRange(src, off, off + len)));
+            return;
+        }
+
+        at = positions.getAndAdd(slot, len);
+
+        while (done < len)
+        {
+            int n = Math.min(direct.capacity(), len - done);
+
+            direct.clear();
+            direct.put(src, off + done, n);
+            direct.flip();
+            while (direct.hasRemaining())
+                at += ch.write(direct, at);
+            done += n;
+        }
+    }
+
+    /*
+     * close()
+     *
+     *     Close all files and, if requested, merge the parts into the
+     *     single file.
+     */
+    public void close()
+            throws IOException
+    {
+        FileChannel out = null;
+
+        for (int i = 0; i < gzipQueues.length(); i++)
+        {
+            if (gzipQueues.get(i) != null)
+                gzipQueues.get(i).finish();
+        }
+        if (gzip != null)
+            gzip.shutdown();
+
+        if (merge)
+            out = FileChannel.open(Paths.get(fileName(-1)),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+        for (int i = 0; i < channels.length(); i++)
+        {
+            FileChannel ch = channels.get(i);
+
+            if (ch == null)
+                continue;
+            if (out != null)
+            {
+                long    size = positions.get(i);
+                long    done = 0;
+
+                while (done < size)
+                    done += ch.transferTo(done, size - done, out);
+            }
+            ch.close();
+            if (out != null)
+                Files.delete(Paths.get(fileName(i)));
+        }
+        if (out != null)
+            out.close();
+    }
+
+    private FileChannel channel(int slot)
+            throws IOException
+    {
+        FileChannel ch = channels.get(slot);
+
+        if (ch != null)
+            return ch;
+        synchronized (this)
+        {
+            ch = channels.get(slot);
+            if (ch == null)
+            {
+                ch = FileChannel.open(Paths.get(fileName(slot)),
+                        StandardOpenOption.CREATE, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                if (gzip != null)
+                    gzipQueues.set(slot, new GzipBlockQueue(ch, positions,
+                            slot, 4 * gzip.parallelism()));
+                channels.set(slot, ch);
+            }
+        }
+        return ch;
+    }
+
+    /*
+     * fileName(slot)
+     *
+     *     order-line.csv for the single layout (and slot -1, the merge
+     *     target), order-line-w001.csv style names for the parts. A .gz
+     *     is appended when compressing.
+     */
+    private String fileName(int slot)
+    {
+        String  suffix = (gzip != null) ? ".csv.gz" : ".csv";
+
+        if (layout == LAYOUT_SINGLE || slot < 0)
+            return dir + base + suffix;
+        return String.format("%s%s-%s%03d%s", dir, base,
+                (layout == LAYOUT_WORKER) ? "t" : "w", slot + 1, suffix);
+    }
+} // end CSVFileSet
+
+
+/*
+ * CSVChannelWriter
+ *
+ *     A worker's handle on a CSVFileSet. Every call of
+ *     write(b, off, len) becomes one contiguous range in the current
+ *     slot's file, so PGCopyTextEncoder.writeTo() must only be called
+ *     on a row boundary. Not thread safe; one per worker.
+ */
+class CSVChannelWriter extends OutputStream
+{
+    private CSVFileSet  files;
+    private ByteBuffer  direct;
+    private int         slot = 0;
+
+    CSVChannelWriter(CSVFileSet files, int bufferSize)
+    {
+        this.files = files;
+        this.direct = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    public int slot(int worker, int w_id)
+    {
+        return files.slot(worker, w_id);
+    }
+
+    public int blockSize()
+    {
+        return files.blockSize(direct.capacity());
+    }
+
+    public void setSlot(int slot)
+    {
+        this.slot = slot;
+    }
+
+    public void write(int b)
+            throws IOException
+    {
+        write(new byte[] {(byte)b}, 0, 1);
+    }
+
+    public void write(byte[] b, int off, int len)
+            throws IOException
+    {
+        if (len > 0)
+            files.write(slot, b, off, len, direct);
+    }
+} // end CSVChannelWriter
+
+
+/*
+ * GzipBlockCompressor
+ *
+ *     Compresses blocks of the CSV output into independent gzip members
+ *     on a fork-join pool, the way pigz does. A file made of such
+ *     members is a normal .gz file for gunzip and zcat, but every block
+ *     can be compressed on another core.
+ */
+class GzipBlockCompressor
+{
+    private ForkJoinPool    pool;
+    private int             level;
+    private int             blockSize;
+
+    /*
+     * One Deflater per pool thread, reset for every block. Creating
+     * them costs more than compressing a small block.
+     */
+    private ThreadLocal<Deflater>   deflater = new ThreadLocal<Deflater>();
+
+    GzipBlockCompressor(int threads, int level, int blockSize)
+    {
+        this.pool = new ForkJoinPool(threads);
+        this.level = level;
+        this.blockSize = blockSize;
+    }
+
+    public int blockSize()
+    {
+        return blockSize;
+    }
+
+    public int parallelism()
+    {
+        return pool.getParallelism();
+    }
+
+    public ForkJoinTask<byte[]> submit(final byte[] block)
+    {
+        return pool.submit(new Callable<byte[]>()
+        {
+            public byte[] call()
+            {
+                return compress(block);
+            }
+        });
+    }
+
+    public void shutdown()
+    {
+        pool.shutdown();
+    }
+
+    /*
+     * compress(block)
+     *
+     *     One complete gzip member: header, raw deflate data, CRC32 and
+     *     length of the input (RFC 1952).
+     */
+    private byte[] compress(byte[] block)
+    {
+        Deflater    def = deflater.get();
+        CRC32       crc = new CRC32();
+        byte[]      out = new byte[block.length + block.length / 1000 + 64];
+        int         pos = 10;
+
+        if (def == null)
+        {
+            def = new Deflater(level, true);
+            deflater.set(def);
+        }
+        def.reset();
+        def.setInput(block);
+        def.finish();
+
+        out[0] = (byte)0x1f;
+        out[1] = (byte)0x8b;
+        out[2] = 8;                     // deflate
+        out[9] = (byte)0xff;            // OS unknown
+        while (!def.finished())
+        {
+            if (pos == out.length - 8)
+                out = Arrays.copyOf(out, out.length * 2);
+            pos += def.deflate(out, pos, out.length - 8 - pos);
+        }
+
+        crc.update(block, 0, block.length);
+        putIntLE(out, pos, (int)crc.getValue());
+        putIntLE(out, pos + 4, block.length);
+        return Arrays.copyOf(out, pos + 8);
+    }
+
+    private static void putIntLE(byte[] b, int at, int v)
+    {
+        b[at] = (byte)v;
+        b[at + 1] = (byte)(v >>> 8);
+        b[at + 2] = (byte)(v >>> 16);
+        b[at + 3] = (byte)(v >>> 24);
+    }
+} // end GzipBlockCompressor
+
+
+/*
+ * GzipBlockQueue
+ *
+ *     The compressed blocks of one file that are not written yet, in the
+ *     order they were handed in. Whoever finds the head done writes it;
+ *     a writer that gets too far ahead of the compressors waits for the
+ *     head instead, which bounds the memory held by pending blocks.
+ */
+class GzipBlockQueue
+{
+    private FileChannel                     ch;
+    private AtomicLongArray                 positions;
+    private int                             slot;
+    private int                             maxPending;
+    private ArrayDeque<ForkJoinTask<byte[]>> pending =
+            new ArrayDeque<ForkJoinTask<byte[]>>();
+    private ReentrantLock                   drainLock = new ReentrantLock();
+
+    GzipBlockQueue(FileChannel ch, AtomicLongArray positions, int slot,
+            int maxPending)
+    {
+        this.ch = ch;
+        this.positions = positions;
+        this.slot = slot;
+        this.maxPending = maxPending;
+    }
+
+    public void add(ForkJoinTask<byte[]> block)
+            throws IOException
+    {
+        int     backlog;
+
+        synchronized (pending)
+        {
+            pending.add(block);
+            backlog = pending.size();
+        }
+        drain(backlog > maxPending);
+    }
+
+    /*
+     * finish()
+     *
+     *     Wait for and write all remaining blocks.
+     */
+    public void finish()
+            throws IOException
+    {
+        drainLock.lock();
+        try
+        {
+            ForkJoinTask<byte[]>    head;
+
+            while ((head = poll(true)) != null)
+                writeBlock(head.join());
+        }
+        finally
+        {
+            drainLock.unlock();
+        }
+    }
+
+    private void drain(boolean wait)
+            throws IOException
+    {
+        ForkJoinTask<byte[]>    head;
+
+        if (wait)
+            drainLock.lock();
+        else if (!drainLock.tryLock())
+            return;
+        try
+        {
+            while ((head = poll(wait)) != null)
+            {
+                writeBlock(head.join());
+                wait = false;
+            }
+        }
+        finally
+        {
+            drainLock.unlock();
+        }
+    }
+
+    private ForkJoinTask<byte[]> poll(boolean wait)
+    {
+        synchronized (pending)
+        {
+            ForkJoinTask<byte[]>    head = pending.peek();
+
+            if (head == null || !(wait || head.isDone()))
+                return null;
+            return pending.poll();
+        }
+    }
+
+    private void writeBlock(byte[] data)
+            throws IOException
+    {
+        ByteBuffer  buf = ByteBuffer.wrap(data);
+        long        at = positions.get(slot);
+
+        while (buf.hasRemaining())
+            at += ch.write(buf, at);
+        positions.set(slot, at);
+    }
+} // end GzipBlockQueue
+
+
+/*
+ * CSVImportPlan
+ *
+ *     The work of the csvimport mode: order-line CSV files, memory mapped
+ *     and cut into chunks that end at a newline. Workers take chunks
+ *     through an atomic counter and stream each one with a single COPY,
+ *     straight from the mapping.
+ *
+ *     Chunks are at most maxChunkBytes, but small enough that every
+ *     worker gets about four of them, so the load stays balanced when
+ *     the files are few or of very different size.
+ *
+ *     Gzip files (csvGzip output) cannot be cut without decompressing
+ *     them, so each is one unit of work that a worker streams through
+ *     GZIPInputStream. They are handed out before the chunks, being the
+ *     largest units.
+ */
+class CSVImportPlan
+{
+    private static final long   MIN_CHUNK = 65536;
+    private static final long   MAX_CHUNK = 1L << 30;
+
+    private List<ByteBuffer>    chunks = new ArrayList<ByteBuffer>();
+    private AtomicInteger       next = new AtomicInteger(0);
+    private List<String>        gzipFiles = new ArrayList<String>();
+    private AtomicInteger       nextGzip = new AtomicInteger(0);
+    private long                totalBytes = 0;
+    private long                gzipBytes = 0;
+    private int                 numFiles;
+
+    CSVImportPlan(List<String> files, long maxChunkBytes, int numWorkers)
+            throws IOException
+    {
+        long    chunkBytes;
+
+        for (String file : files)
+        {
+            if (file.endsWith(".gz"))
+            {
+                gzipFiles.add(file);
+                gzipBytes += new File(file).length();
+            }
+            else
+                totalBytes += new File(file).length();
+        }
+        chunkBytes = Math.min(Math.min(maxChunkBytes, MAX_CHUNK),
+                totalBytes / (4L * Math.max(numWorkers, 1)));
+        chunkBytes = Math.max(chunkBytes, MIN_CHUNK);
+        numFiles = files.size();
+
+        for (String file : files)
+        {
+            if (file.endsWith(".gz"))
+                continue;
+            try (FileChannel ch = FileChannel.open(Paths.get(file),
+                    StandardOpenOption.READ))
+            {
+                long    size = ch.size();
+                long    start = 0;
+
+                while (start < size)
+                {
+                    int         len = (int)Math.min(chunkBytes, size - start);
+                    ByteBuffer  map = ch.map(FileChannel.MapMode.READ_ONLY,
+                            start, len);
+
+                    /*
+                     * Cut after the last newline of the region. The last
+                     * chunk of a file takes whatever is left.
+                     */
+                    if (start + len < size)
+                    {
+                        while (len > 0 && map.get(len - 1) != '\n')
+                            len--;
+                        if (len == 0)
+                            throw new IOException(file + ": no newline in " +
+                                    chunkBytes + " bytes at offset " + start);
+                        map.limit(len);
+                    }
+                    chunks.add(map);
+                    start += len;
+                }
+            }
+        }
+    }
+
+    /*
+     * nextChunk()
+     *
+     *     The next chunk to import, or null when all are handed out.
+     */
+    public ByteBuffer nextChunk()
+    {
+        int     i = next.getAndIncrement();
+
+        if (i >= chunks.size())
+            return null;
+        return chunks.get(i).duplicate();
+    }
+
+    /*
+     * nextGzipFile()
+     *
+     *     The next gzip file to import, or null when all are handed out.
+     */
+    public String nextGzipFile()
+    {
+        int     i = nextGzip.getAndIncrement();
+
+        if (i >= gzipFiles.size())
+            return null;
+        return gzipFiles.get(i);
+    }
+
+    public String describe()
+    {
+        return String.format("Import: %d files, %.1f MB in %d chunks, " +
+                        "%.1f MB gzip in %d files",
+                numFiles, totalBytes / 1048576.0, chunks.size(),
+                gzipBytes / 1048576.0, gzipFiles.size());
+    }
+} // end CSVImportPlan
+
+
+/*
+ * OrderLineReplayFile
+ *
+ *     Pre-generated order-line rows for warehouses 1..n, written once by
+ *     the record mode and replayed by any other mode instead of calling
+ *     jTPCCRandom during the run. Every run that replays the same file
+ *     sends exactly the same rows.
+ *
+ *     The key columns follow from the row's position, the constant ones
+ *     from the warehouse, so a record only holds what is random. Records
+ *     are fixed width and in row order, warehouse after warehouse, which
+ *     makes the file addressable by row number for reading and writing
+ *     alike. All numbers are little endian.
+ *
+ *         header  (64 bytes)
+ *             0   magic "BMSQLOLR"
+ *             8   int32 format version (1)
+ *             12  int32 record size
+ *             16  int32 number of warehouses
+ *             20  int32 rows per warehouse
+ *             24  int64 creation time (epoch millis)
+ *
+ *         record  (44 bytes)
+ *             0   int32 ol_i_id
+ *             4   int64 ol_delivery_d (epoch millis, Long.MIN_VALUE
+ *                 for NULL)
+ *             12  int64 ol_amount in cents
+ *             20  24 bytes ol_dist_info
+ *
+ *     The file is mapped in segments of whole warehouses of up to 1GB
+ *     each, the largest a single mapping can be.
+ */
+class OrderLineReplayFile
+{
+    private static final byte[] MAGIC = {
+            'B', 'M', 'S', 'Q', 'L', 'O', 'L', 'R'};
+    private static final int    VERSION = 1;
+    private static final int    HEADER_SIZE = 64;
+    private static final int    RECORD_SIZE = 44;
+    private static final long   WAREHOUSE_BYTES =
+            (long)OrderLineBatch.ROWS_PER_WAREHOUSE * RECORD_SIZE;
+    private static final int    WAREHOUSES_PER_SEGMENT =
+            (int)((1L << 30) / WAREHOUSE_BYTES);
+
+    private String              path;
+    private int                 numWarehouses;
+    private MappedByteBuffer[]  segments;
+
+    private OrderLineReplayFile(String path, FileChannel ch, int numWarehouses,
+            FileChannel.MapMode mapMode)
+            throws IOException
+    {
+        int     nsegs = (numWarehouses + WAREHOUSES_PER_SEGMENT - 1) /
+                WAREHOUSES_PER_SEGMENT;
+
+        this.path = path;
+        this.numWarehouses = numWarehouses;
+        this.segments = new MappedByteBuffer[nsegs];
+        for (int s = 0; s < nsegs; s++)
+        {
+            int     first = s * WAREHOUSES_PER_SEGMENT;
+            int     count = Math.min(WAREHOUSES_PER_SEGMENT,
+                    numWarehouses - first);
+
+            segments[s] = ch.map(mapMode, HEADER_SIZE + first * WAREHOUSE_BYTES,
+                    count * WAREHOUSE_BYTES);
+            segments[s].order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    /*
+     * create(path, numWarehouses)
+     *
+     *     A new file of the full size for the record mode to fill.
+     */
+    public static OrderLineReplayFile create(String path, int numWarehouses)
+            throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(Paths.get(path),
+                StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            ByteBuffer  hdr = ByteBuffer.allocate(HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            hdr.put(MAGIC);
+            hdr.putInt(VERSION);
+            hdr.putInt(RECORD_SIZE);
+            hdr.putInt(numWarehouses);
+            hdr.putInt(OrderLineBatch.ROWS_PER_WAREHOUSE);
+            hdr.putLong(System.currentTimeMillis());
+            hdr.clear();
+            while (hdr.hasRemaining())
+                ch.write(hdr, hdr.position());
+
+            return new OrderLineReplayFile(path, ch, numWarehouses,
+                    FileChannel.MapMode.READ_WRITE);
+        }
+    }
+
+    /*
+     * open(path)
+     *
+     *     An existing file for replay.
+     */
+    public static OrderLineReplayFile open(String path)
+            throws IOException
+    {
+        try (FileChannel ch = FileChannel.open(Paths.get(path),
+                StandardOpenOption.READ))
+        {
+            ByteBuffer  hdr = ByteBuffer.allocate(HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            byte[]      magic = new byte[MAGIC.length];
+            int         numWarehouses;
+
+            while (hdr.hasRemaining())
+            {
+                if (ch.read(hdr, hdr.position()) < 0)
+                    throw new IOException(path + ": not a replay file");
+            }
+            hdr.flip();
+            hdr.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || hdr.getInt() != VERSION ||
+                    hdr.getInt() != RECORD_SIZE)
+                throw new IOException(path + ": not a replay file of " +
+                        "version " + VERSION);
+            numWarehouses = hdr.getInt();
+            if (hdr.getInt() != OrderLineBatch.ROWS_PER_WAREHOUSE ||
+                    ch.size() < HEADER_SIZE + numWarehouses * WAREHOUSE_BYTES)
+                throw new IOException(path + ": file is truncated");
+
+            return new OrderLineReplayFile(path, ch, numWarehouses,
+                    FileChannel.MapMode.READ_ONLY);
+        }
+    }
+
+    public int getNumWarehouses()
+    {
+        return numWarehouses;
+    }
+
+    public String getPath()
+    {
+        return path;
+    }
+
+    /*
+     * write(b)
+     *
+     *     Store the rows of a generated batch at their positions. Workers
+     *     write disjoint rows, so no locking is needed.
+     */
+    public void write(OrderLineBatch b)
+    {
+        for (int i = 0; i < b.size; i++)
+        {
+            ByteBuffer  seg = segment(b.wId[i]);
+            ByteBuffer  bytes = seg.duplicate();
+            int         at = offset(b.wId[i],
+                    (b.oId[i] - 1) * OrderLineBatch.LINES_PER_ORDER +
+                            b.number[i] - 1);
+
+            seg.putInt(at, b.iId[i]);
+            seg.putLong(at + 4, b.deliveryMillis[i]);
+            seg.putLong(at + 12, b.amountCents[i]);
+            bytes.position(at + 20);
+            bytes.put(b.distInfo, i * OrderLineBatch.DIST_INFO_LEN,
+                    OrderLineBatch.DIST_INFO_LEN);
+        }
+    }
+
+    /*
+     * fill(b, w_id, firstRow, count, itemId, keysOnly)
+     *
+     *     The replay counterpart of OrderLineBatch.fill() and fillKeys():
+     *     the same rows the record run generated, with the same itemId
+     *     rule applied to ol_i_id.
+     */
+    public int fill(OrderLineBatch b, int w_id, int firstRow, int count,
+            int itemId, boolean keysOnly)
+    {
+        int         n = b.fillKeys(null, w_id, firstRow, count,
+                (itemId == OrderLineBatch.RANDOM_ITEM) ?
+                        OrderLineBatch.NO_ITEM : itemId);
+        ByteBuffer  seg = segment(w_id);
+        ByteBuffer  bytes = seg.duplicate();
+        int         at = offset(w_id, firstRow);
+
+        for (int i = 0; i < n; i++, at += RECORD_SIZE)
+        {
+            if (itemId == OrderLineBatch.RANDOM_ITEM)
+                b.iId[i] = seg.getInt(at);
+            if (keysOnly)
+                continue;
+            b.supplyWId[i] = w_id;
+            b.quantity[i] = 5;
+            b.deliveryMillis[i] = seg.getLong(at + 4);
+            b.amountCents[i] = seg.getLong(at + 12);
+            bytes.position(at + 20);
+            bytes.get(b.distInfo, i * OrderLineBatch.DIST_INFO_LEN,
+                    OrderLineBatch.DIST_INFO_LEN);
+        }
+        return n;
+    }
+
+    /*
+     * close()
+     *
+     *     Flush a recorded file to disk.
+     */
+    public void close()
+    {
+        for (MappedByteBuffer seg : segments)
+        {
+            if (!seg.isReadOnly())
+                seg.force();
+        }
+    }
+
+    private ByteBuffer segment(int w_id)
+    {
+        return segments[(w_id - 1) / WAREHOUSES_PER_SEGMENT];
+    }
+
+    private int offset(int w_id, int row)
+    {
+        return (int)(((w_id - 1) % WAREHOUSES_PER_SEGMENT) * WAREHOUSE_BYTES +
+                (long)row * RECORD_SIZE);
+    }
+} // end OrderLineReplayFile
+
+
+/*
+ * OrderLineBatch
+ *
+ *     A batch of generated bmsql_order_line rows held in primitive
+ *     arrays, one per column. A warehouse has ROWS_PER_WAREHOUSE rows,
+ *     addressed by a row number where row = (o_id - 1) * 10 +
+ *     (ol_number - 1). Filling a batch is one tight loop without boxing
+ *     or Timestamp objects; the JDBC, COPY and CSV code paths all read
+ *     their rows from here.
+ */
+class OrderLineBatch
+{
+    public static final int     ORDERS_PER_WAREHOUSE = 3000;
+    public static final int     LINES_PER_ORDER = 10;
+    public static final int     ROWS_PER_WAREHOUSE =
+            ORDERS_PER_WAREHOUSE * LINES_PER_ORDER;
+    public static final int     DIST_INFO_LEN = 24;
+    public static final long    NULL_TIMESTAMP = Long.MIN_VALUE;
+    public static final int     RANDOM_ITEM = 0;
+    public static final int     NO_ITEM = -1;
+
+    public int      size = 0;
+    public int[]    oId;
+    public int[]    dId;
+    public int[]    wId;
+    public int[]    number;
+    public int[]    iId;
+    public int[]    supplyWId;
+    public int[]    quantity;
+    public long[]   deliveryMillis;
+    public long[]   amountCents;
+    public byte[]   distInfo;
+
+    OrderLineBatch(int capacity)
+    {
+        allocate(Math.max(capacity, 1));
+    }
+
+    public int capacity()
+    {
+        return oId.length;
+    }
+
+    /*
+     * fill(rnd, w_id, firstRow, count, itemId)
+     *
+     *     Generate up to count complete rows of warehouse w_id, starting
+     *     at row number firstRow and stopping at the end of the warehouse.
+     *     An itemId of RANDOM_ITEM draws a random ol_i_id, any other value
+     *     is used as a constant. Modes that never look at ol_i_id pass
+     *     NO_ITEM. Returns the number of rows generated.
+     *
+     *     With a seed, every order draws from its own stream, keyed by
+     *     warehouse and order number (see startOrder()). The rows then do
+     *     not depend on how the work is cut into jobs and batches
+     *     (chunkOrders, loadWorkers, pipeline, commitbatch, autoBatch).
+     */
+    public int fill(jTPCCRandom rnd, int w_id, int firstRow, int count,
+                    int itemId)
+    {
+        long    now = rnd.nowMillis();
+        int     n = rowsLeft(firstRow, count);
+
+        for (int i = 0; i < n; i++)
+        {
+            if (i == 0 || (firstRow + i) % LINES_PER_ORDER == 0)
+                startOrder(rnd, w_id, firstRow + i, itemId, false, now);
+            fillRow(rnd, i, w_id, firstRow + i, itemId, now);
+        }
+        size = n;
+        return n;
+    }
+
+    private void fillRow(jTPCCRandom rnd, int i, int w_id, int row,
+                         int itemId, long now)
+    {
+        setKey(rnd, i, w_id, row, itemId);
+        supplyWId[i] = w_id;
+        quantity[i] = 5;
+        if (oId[i] < 2101)
+        {
+            deliveryMillis[i] = now;
+            amountCents[i] = 0;
+        }
+        else
+        {
+            deliveryMillis[i] = NULL_TIMESTAMP;
+            amountCents[i] = rnd.nextLong(1, 999999);
+        }
+        rnd.fillAString(distInfo, i * DIST_INFO_LEN, DIST_INFO_LEN);
+    }
+
+    /*
+     * startOrder(rnd, w_id, row, itemId, keysOnly, now)
+     *
+     *     Restart the stream of the order that row belongs to. A batch
+     *     that begins in the middle of an order replays the draws of the
+     *     order's earlier rows into slot 0, which the caller overwrites
+     *     next. A no-op unless a seed was configured.
+     */
+    private void startOrder(jTPCCRandom rnd, int w_id, int row, int itemId,
+                            boolean keysOnly, long now)
+    {
+        int     first = row - row % LINES_PER_ORDER;
+
+        if (!rnd.isSeeded())
+            return;
+        rnd.reseed(orderKey(w_id, row / LINES_PER_ORDER + 1));
+        for (int r = first; r < row; r++)
+        {
+            if (keysOnly)
+                setKey(rnd, 0, w_id, r, itemId);
+            else
+                fillRow(rnd, 0, w_id, r, itemId, now);
+        }
+    }
+
+    /*
+     * orderKey(w_id, o_id)
+     *
+     *     The jTPCCRandom.reseed() key of one order.
+     */
+    public static long orderKey(int w_id, int o_id)
+    {
+        return ((long)w_id << 32) | o_id;
+    }
+
+    /*
+     * fill(rnd, job, firstRow, count, itemId)
+     *
+     *     Like fill() above, but stops at the end of the job.
+     */
+    public int fill(jTPCCRandom rnd, LoadJob job, int firstRow, int count,
+                    int itemId)
+    {
+        return fill(rnd, job.w_id, firstRow,
+                Math.min(count, job.endRow() - firstRow), itemId);
+    }
+
+    public int fillKeys(jTPCCRandom rnd, LoadJob job, int firstRow,
+                        int count, int itemId)
+    {
+        return fillKeys(rnd, job.w_id, firstRow,
+                Math.min(count, job.endRow() - firstRow), itemId);
+    }
+
+    /*
+     * fillKeys(rnd, w_id, firstRow, count, itemId)
+     *
+     *     Like fill(), but only generates the primary key columns and
+     *     ol_i_id. This is all the update and delete modes need. Only a
+     *     RANDOM_ITEM draws anything, so rnd may be null otherwise.
+     */
+    public int fillKeys(jTPCCRandom rnd, int w_id, int firstRow, int count,
+                        int itemId)
+    {
+        int     n = rowsLeft(firstRow, count);
+
+        for (int i = 0; i < n; i++)
+        {
+            if (itemId == RANDOM_ITEM &&
+                    (i == 0 || (firstRow + i) % LINES_PER_ORDER == 0))
+                startOrder(rnd, w_id, firstRow + i, itemId, true, 0);
+            setKey(rnd, i, w_id, firstRow + i, itemId);
+        }
+        size = n;
+        return n;
+    }
+
+    /*
+     * rowsLeft(firstRow, count)
+     *
+     *     How many of count rows from firstRow the warehouse still has.
+     *     Grows the batch if needed.
+     */
+    private int rowsLeft(int firstRow, int count)
+    {
+        int     n = Math.max(0, Math.min(count, ROWS_PER_WAREHOUSE - firstRow));
+
+        if (n > capacity())
+            allocate(n);
+        return n;
+    }
+
+    private void setKey(jTPCCRandom rnd, int i, int w_id, int row, int itemId)
+    {
+        oId[i] = row / LINES_PER_ORDER + 1;
+        dId[i] = w_id + 10;
+        wId[i] = w_id;
+        number[i] = row % LINES_PER_ORDER + 1;
+        iId[i] = (itemId == RANDOM_ITEM) ? rnd.nextInt(1, 100000) : itemId;
+    }
+
+    /*
+     * exact(col)
+     *
+     *     A column trimmed to the batch size, for APIs like
+     *     createArrayOf() that take the whole array. A full batch is
+     *     returned without copying.
+     */
+    public int[] exact(int[] col)
+    {
+        return (col.length == size) ? col : Arrays.copyOf(col, size);
+    }
+
+    public boolean isDelivered(int i)
+    {
+        return deliveryMillis[i] != NULL_TIMESTAMP;
+    }
+
+    public double amount(int i)
+    {
+        return amountCents[i] / 100.0;
+    }
+
+    public String distInfoString(int i)
+    {
+        return new String(distInfo, i * DIST_INFO_LEN, DIST_INFO_LEN,
+                java.nio.charset.StandardCharsets.ISO_8859_1);
+    }
+
+    /*
+     * encodeRow(enc, i)
+     *
+     *     Write row i to a COPY encoder in bmsql_order_line column order.
+     */
+    public void encodeRow(PGCopyEncoder enc, int i)
+    {
+        enc.beginRow();
+        enc.appendInt(oId[i]);
+        enc.appendInt(dId[i]);
+        enc.appendInt(wId[i]);
+        enc.appendInt(number[i]);
+        enc.appendInt(iId[i]);
+        enc.appendInt(supplyWId[i]);
+        if (isDelivered(i))
+            enc.appendTimestamp(deliveryMillis[i]);
+        else
+            enc.appendNull();
+        enc.appendInt(quantity[i]);
+        enc.appendNumeric(amountCents[i]);
+        enc.appendBytes(distInfo, i * DIST_INFO_LEN, DIST_INFO_LEN);
+        enc.endRow();
+    }
+
+    /*
+     * encodeCSVRow(enc, i)
+     *
+     *     Write row i in the column order of the order-line CSV file.
+     */
+    public void encodeCSVRow(PGCopyEncoder enc, int i)
+    {
+        enc.beginRow();
+        enc.appendInt(wId[i]);
+        enc.appendInt(dId[i]);
+        enc.appendInt(oId[i]);
+        enc.appendInt(number[i]);
+        enc.appendInt(iId[i]);
+        if (isDelivered(i))
+            enc.appendTimestamp(deliveryMillis[i]);
+        else
+            enc.appendNull();
+        enc.appendNumeric(amountCents[i]);
+        enc.appendInt(supplyWId[i]);
+        enc.appendInt(quantity[i]);
+        enc.appendBytes(distInfo, i * DIST_INFO_LEN, DIST_INFO_LEN);
+        enc.endRow();
+    }
+
+    private void allocate(int capacity)
+    {
+        oId = new int[capacity];
+        dId = new int[capacity];
+        wId = new int[capacity];
+        number = new int[capacity];
+        iId = new int[capacity];
+        supplyWId = new int[capacity];
+        quantity = new int[capacity];
+        deliveryMillis = new long[capacity];
+        amountCents = new long[capacity];
+        distInfo = new byte[capacity * DIST_INFO_LEN];
+        size = 0;
+    }
+} // end OrderLineBatch
+
+
+/*
+ * LoadJob
+ *
+ *     One unit of work: the orders firstOrder .. lastOrder of a warehouse.
+ */
+class LoadJob
+{
+    public final int        w_id;
+    public final int        firstOrder;
+    public final int        lastOrder;
+    public final boolean    stolen;
+
+    LoadJob(int w_id, int firstOrder, int lastOrder, boolean stolen)
+    {
+        this.w_id = w_id;
+        this.firstOrder = firstOrder;
+        this.lastOrder = lastOrder;
+        this.stolen = stolen;
+    }
+
+    public int firstRow()
+    {
+        return (firstOrder - 1) * OrderLineBatch.LINES_PER_ORDER;
+    }
+
+    public int endRow()
+    {
+        return lastOrder * OrderLineBatch.LINES_PER_ORDER;
+    }
+} // end LoadJob
+
+
+/*
+ * JobScheduler
+ *
+ *     Hands out warehouses split into chunks of chunkOrders orders. The
+ *     chunks are numbered warehouse by warehouse and each worker owns a
+ *     contiguous range of them, consumed through an atomic counter. A
+ *     worker whose range is used up steals from the worker with the most
+ *     chunks left. No locks are taken. When there are more workers than
+ *     chunks, the chunks are made smaller so that every range starts
+ *     with local work. Seeded data does not change with it, as rows are
+ *     drawn per order (OrderLineBatch.fill()).
+ *
+ *     For a duration run the scheduler cycles instead: every worker
+ *     goes round its own range again and again and the jobs never run
+ *     out. Main.getNextJob() ends the run at the time limit.
+ */
+class JobScheduler
+{
+    private int             chunkOrders;
+    private int             chunksPerWarehouse;
+    private int             totalChunks;
+    private boolean         cycle;
+    private AtomicInteger[] next;
+    private int[]           start;
+    private int[]           end;
+
+    JobScheduler(int numWarehouses, int chunkOrders, int numWorkers)
+    {
+        this(numWarehouses, chunkOrders, numWorkers, false);
+    }
+
+    JobScheduler(int numWarehouses, int chunkOrders, int numWorkers,
+                 boolean cycle)
+    {
+        int     totalChunks;
+
+        if (chunkOrders <= 0 ||
+                chunkOrders > OrderLineBatch.ORDERS_PER_WAREHOUSE)
+            chunkOrders = OrderLineBatch.ORDERS_PER_WAREHOUSE;
+        chunkOrders = fitChunkOrders(numWarehouses, chunkOrders, numWorkers);
+        this.chunkOrders = chunkOrders;
+        this.chunksPerWarehouse = (OrderLineBatch.ORDERS_PER_WAREHOUSE +
+                chunkOrders - 1) / chunkOrders;
+        totalChunks = numWarehouses * chunksPerWarehouse;
+        this.totalChunks = totalChunks;
+        this.cycle = cycle;
+
+        this.next = new AtomicInteger[numWorkers];
+        this.start = new int[numWorkers];
+        this.end = new int[numWorkers];
+        for (int i = 0; i < numWorkers; i++)
+        {
+            start[i] = (int)((long)totalChunks * i / numWorkers);
+            next[i] = new AtomicInteger(start[i]);
+            end[i] = (int)((long)totalChunks * (i + 1) / numWorkers);
+        }
+    }
+
+    /*
+     * fitChunkOrders(numWarehouses, chunkOrders, numWorkers)
+     *
+     *     With fewer chunks than workers some ranges would be empty and
+     *     those workers could only steal. Cut the warehouses into as
+     *     many chunks as it takes for the total to divide evenly among
+     *     the workers, so every worker starts on work of its own.
+     */
+    private static int fitChunkOrders(int numWarehouses, int chunkOrders,
+                                      int numWorkers)
+    {
+        int     orders = OrderLineBatch.ORDERS_PER_WAREHOUSE;
+        int     perWarehouse;
+        int     a = numWorkers;
+        int     b = numWarehouses;
+
+        if (numWarehouses <= 0 || numWarehouses *
+                ((orders + chunkOrders - 1) / chunkOrders) >= numWorkers)
+            return chunkOrders;
+
+        while (b != 0)
+        {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        perWarehouse = numWorkers / a;
+        chunkOrders = Math.max((orders + perWarehouse - 1) / perWarehouse, 1);
+        if (numWarehouses * ((orders + chunkOrders - 1) / chunkOrders) <
+                numWorkers)
+            chunkOrders = Math.max(orders / perWarehouse, 1);
+        return chunkOrders;
+    }
+
+    public int chunkOrders()
+    {
+        return chunkOrders;
+    }
+
+    /*
+     * nextJob(worker)
+     *
+     *     The next job for a worker, or null when all work is handed out.
+     */
+    public LoadJob nextJob(int worker)
+    {
+        int     chunk = next[worker].getAndIncrement();
+
+        if (cycle)
+            return makeJob(cycleChunk(worker, chunk), false);
+        if (chunk < end[worker])
+            return makeJob(chunk, false);
+
+        for (;;)
+        {
+            int     victim = -1;
+            int     most = 0;
+
+            for (int i = 0; i < next.length; i++)
+            {
+                int left = end[i] - next[i].get();
+                if (left > most)
+                {
+                    most = left;
+                    victim = i;
+                }
+            }
+            if (victim < 0)
+                return null;
+
+            chunk = next[victim].getAndIncrement();
+            if (chunk < end[victim])
+                return makeJob(chunk, true);
+        }
+    }
+
+    /*
+     * cycleChunk(worker, n)
+     *
+     *     The n-th chunk handed to a worker in cycle mode, wrapped into
+     *     its range. Workers with an empty range (more workers than
+     *     chunks) cycle over the whole key space.
+     */
+    private int cycleChunk(int worker, int n)
+    {
+        int     span = end[worker] - start[worker];
+
+        if (totalChunks == 0)
+            return 0;
+        if (span == 0)
+            return (n & Integer.MAX_VALUE) % totalChunks;
+        return start[worker] + ((n - start[worker]) & Integer.MAX_VALUE) % span;
+    }
+
+    private LoadJob makeJob(int chunk, boolean stolen)
+    {
+        int     w_id = chunk / chunksPerWarehouse + 1;
+        int     first = (chunk % chunksPerWarehouse) * chunkOrders + 1;
+        int     last = Math.min(first + chunkOrders - 1,
+                OrderLineBatch.ORDERS_PER_WAREHOUSE);
+
+        return new LoadJob(w_id, first, last, stolen);
+    }
+} // end JobScheduler
+
+
+/*
+ * OpenLoopPacer
+ *
+ *     Spaces the transactions of all workers together to a fixed rate
+ *     per second. Transaction k is due at start + k / rate no matter how
+ *     long earlier ones took. A worker that falls behind starts right
+ *     away but its latency still counts from the due time, so a stalled
+ *     database shows up as queueing delay instead of fewer samples
+ *     (coordinated omission).
+ */
+class OpenLoopPacer
+{
+    private long        startNanos;
+    private double      intervalNanos;
+    private AtomicLong  ticket = new AtomicLong();
+
+    OpenLoopPacer(int ratePerSecond)
+    {
+        this.startNanos = System.nanoTime();
+        this.intervalNanos = 1e9 / ratePerSecond;
+    }
+
+    /*
+     * acquire()
+     *
+     *     Wait until the next transaction is due and return its intended
+     *     start in System.nanoTime() terms.
+     */
+    public long acquire()
+    {
+        long    intended = startNanos +
+                (long)(ticket.getAndIncrement() * intervalNanos);
+        long    wait;
+
+        while ((wait = intended - System.nanoTime()) > 0)
+            LockSupport.parkNanos(wait);
+        return intended;
+    }
+} // end OpenLoopPacer
+
+
+/*
+ * BatchTuner
+ *
+ *     Hill climber for the number of rows per transaction. Workers
+ *     report every executed batch. Once per interval the tuner compares
+ *     the rows/s of all workers with the previous interval. It keeps
+ *     stepping the batch size the same way while throughput improves
+ *     and turns around when it gets worse. If more than 1% of the
+ *     batches took longer than maxLatency, it shrinks the batch no
+ *     matter what the throughput says.
+ */
+class BatchTuner
+{
+    private static final double STEP = 1.25;
+    private static final double NOISE = 0.02;
+
+    private String          mode;
+    private int             minRows;
+    private int             maxRows;
+    private long            intervalNanos;
+    private long            maxLatencyNanos;
+
+    private volatile int    rows;
+    private int             direction = 1;
+    private double          lastRate = 0.0;
+    private int             bestRows;
+    private double          bestRate = 0.0;
+    private int             intervals = 0;
+
+    private volatile long   intervalStart;
+    private AtomicBoolean   evaluating = new AtomicBoolean();
+    private LongAdder       intervalRows = new LongAdder();
+    private LongAdder       intervalBatches = new LongAdder();
+    private LongAdder       slowBatches = new LongAdder();
+
+    BatchTuner(String mode, int startRows, int minRows, int maxRows,
+               int intervalMillis, int maxLatencyMillis)
+    {
+        this.mode = mode;
+        this.minRows = Math.max(1, minRows);
+        this.maxRows = Math.max(this.minRows, maxRows);
+        this.rows = clamp(startRows);
+        this.bestRows = rows;
+        this.intervalNanos = Math.max(1, intervalMillis) * 1000000L;
+        this.maxLatencyNanos = maxLatencyMillis * 1000000L;
+    }
+
+    public void begin()
+    {
+        intervalStart = System.nanoTime();
+    }
+
+    public int batchRows()
+    {
+        return rows;
+    }
+
+    public int maxRows()
+    {
+        return maxRows;
+    }
+
+    /*
+     * record(rows, nanos)
+     *
+     *     Count one executed batch. The worker that finishes the
+     *     interval does the evaluation, the others go on.
+     */
+    public void record(int batchRows, long nanos)
+    {
+        long    now;
+
+        intervalRows.add(batchRows);
+        intervalBatches.increment();
+        if (maxLatencyNanos > 0 && nanos > maxLatencyNanos)
+            slowBatches.increment();
+
+        now = System.nanoTime();
+        if (now - intervalStart >= intervalNanos &&
+                evaluating.compareAndSet(false, true))
+        {
+            try
+            {
+                if (now - intervalStart >= intervalNanos)
+                    evaluate(now);
+            }
+            finally
+            {
+                evaluating.set(false);
+            }
+        }
+    }
+
+    private void evaluate(long now)
+    {
+        double  rate = intervalRows.sumThenReset() * 1e9 /
+                (now - intervalStart);
+        long    batches = intervalBatches.sumThenReset();
+        long    slow = slowBatches.sumThenReset();
+        boolean tooSlow = slow * 100 > batches;
+        int     oldRows = rows;
+
+        intervalStart = now;
+        if (batches == 0)
+            return;
+        intervals++;
+
+        if (tooSlow)
+            direction = -1;
+        else
+        {
+            if (rate > bestRate)
+            {
+                bestRate = rate;
+                bestRows = oldRows;
+            }
+            if (rate < lastRate * (1.0 - NOISE))
+                direction = -direction;
+        }
+        lastRate = rate;
+        rows = clamp((direction > 0) ? (int)Math.ceil(oldRows * STEP) :
+                (int)(oldRows / STEP));
+        if (rows == oldRows)
+            direction = -direction;
+
+        System.out.printf("BatchTuner %s: %d rows %.1f rows/s%s -> %d%n",
+                mode, oldRows, rate,
+                tooSlow ? " (" + slow + " slow)" : "", rows);
+    }
+
+    /*
+     * report(mode)
+     *
+     *     Print where the tuner settled, in commitbatch units of the mode.
+     */
+    public void report(LoadMode mode)
+    {
+        int     per = (mode.unit == LoadMode.PER_ORDERS) ?
+                OrderLineBatch.LINES_PER_ORDER : 1;
+
+        System.out.printf("BatchTuner %s: converged on commitbatch=%d " +
+                        "after %d intervals (best %d at %.1f rows/s)%n",
+                mode.name, Math.max(1, rows / per), intervals,
+                Math.max(1, bestRows / per), bestRate);
+    }
+
+    private int clamp(int n)
+    {
+        return Math.max(minRows, Math.min(maxRows, n));
+    }
+} // end BatchTuner
+
+
+/*
+ * LoadResult
+ *
+ *     Outcome of one runLoad(): throughput and tail latency of a mode at
+ *     one worker count and commitbatch. The sweep collects these and
+ *     prints them as matrices.
+ */
+class LoadResult
+{
+    public final String     mode;
+    public final int        workers;
+    public final int        commitbatch;
+    public final long       elapsedMillis;
+    public final long       rows;
+    public final long       transactions;
+    public final double     p99Millis;
+
+    LoadResult(LoadMode mode, int workers, int commitbatch,
+               long elapsedMillis, LoadDataWorker[] sessions)
+    {
+        LatencyHistogram    txn = new LatencyHistogram();
+        long                rows = 0;
+
+        for (LoadDataWorker s : sessions)
+        {
+            txn.add(s.getLatency(LoadDataWorker.OP_TRANSACTION));
+            rows += s.getCounters().rows.sum();
+        }
+        this.mode = mode.name;
+        this.workers = workers;
+        this.commitbatch = commitbatch;
+        this.elapsedMillis = elapsedMillis;
+        this.rows = rows;
+        this.transactions = txn.getCount();
+        this.p99Millis = txn.getValueAtPercentile(99.0) / 1000.0;
+    }
+
+    public double rowsPerSecond()
+    {
+        return (elapsedMillis == 0) ? 0.0 : rows * 1000.0 / elapsedMillis;
+    }
+
+    /*
+     * printMatrix(results, modes, workers, batches)
+     *
+     *     One block per mode with a line per worker count and a column
+     *     per commitbatch, showing rows/s and p99 in ms.
+     */
+    public static void printMatrix(List<LoadResult> results, String[] modes,
+                                   int[] workers, int[] batches)
+    {
+        System.out.println("");
+        System.out.println("Sweep results (rows/s / p99 transaction ms)");
+        for (String name : modes)
+        {
+            StringBuilder   line = new StringBuilder();
+
+            System.out.println("");
+            line.append(String.format("%-24s", name.trim()));
+            for (int cb : batches)
+                line.append(String.format(" %22s", "commitbatch=" + cb));
+            System.out.println(line);
+            for (int w : workers)
+            {
+                line.setLength(0);
+                line.append(String.format("%-24s", "loadWorkers=" + w));
+                for (int cb : batches)
+                {
+                    LoadResult  r = find(results, name.trim(), w, cb);
+
+                    if (r == null)
+                        line.append(String.format(" %22s", "-"));
+                    else
+                        line.append(String.format(" %12.1f / %7.2f",
+                                r.rowsPerSecond(), r.p99Millis));
+                }
+                System.out.println(line);
+            }
+        }
+    }
+
+    public static void writeCSV(List<LoadResult> results, String file)
+            throws IOException
+    {
+        BufferedWriter  out = new BufferedWriter(new FileWriter(file));
+
+        out.write("mode,workers,commitbatch,elapsed_ms,rows,transactions," +
+                "rows_per_s,p99_ms\n");
+        for (LoadResult r : results)
+            out.write(String.format(Locale.ROOT,
+                    "%s,%d,%d,%d,%d,%d,%.1f,%.3f%n", r.mode, r.workers,
+                    r.commitbatch, r.elapsedMillis, r.rows, r.transactions,
+                    r.rowsPerSecond(), r.p99Millis));
+        out.close();
+    }
+
+    private static LoadResult find(List<LoadResult> results, String mode,
+                                   int workers, int commitbatch)
+    {
+        for (LoadResult r : results)
+        {
+            if (r.mode.equals(mode) && r.workers == workers &&
+                    r.commitbatch == commitbatch)
+                return r;
+        }
+        return null;
+    }
+} // end LoadResult
+
+
+/*
+ * AdaptiveLimit
+ *
+ *     Counting gate whose number of permits can be changed while
+ *     workers wait on it. Lowering the limit does not interrupt
+ *     transactions in flight. The workers park as they finish them.
+ */
+class AdaptiveLimit
+{
+    private int     limit;
+    private int     active = 0;
+
+    AdaptiveLimit(int limit)
+    {
+        this.limit = Math.max(1, limit);
+    }
+
+    public synchronized void acquire()
+    {
+        while (active >= limit)
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        active++;
+    }
+
+    public synchronized void release()
+    {
+        active--;
+        notify();
+    }
+
+    public synchronized int getLimit()
+    {
+        return limit;
+    }
+
+    public synchronized void setLimit(int limit)
+    {
+        this.limit = Math.max(1, limit);
+        notifyAll();
+    }
+} // end AdaptiveLimit
+
+
+/*
+ * ConcurrencyController
+ *
+ *     AIMD control of how many workers run at the same time. Every
+ *     interval it looks at rows/s, the mean commit latency and the
+ *     share of retried transactions. If commit latency is above the
+ *     limit, or above twice the lowest seen when no limit is set, or
+ *     the retries are above maxRetryPct, the number of active workers
+ *     is halved. Otherwise one worker is added as long as throughput
+ *     still improves.
+ */
+class ConcurrencyController implements Runnable
+{
+    private static final double NOISE = 0.02;
+
+    private AdaptiveLimit       limit;
+    private LoadDataWorker[]    workers;
+    private int                 maxActive;
+    private long                intervalMillis;
+    private double              maxCommitMillis;
+    private double              maxRetryPct;
+    private volatile boolean    stopped = false;
+
+    private long                lastRows = 0;
+    private long                lastCommits = 0;
+    private long                lastCommitNanos = 0;
+    private long                lastRetries = 0;
+    private double              lastRate = 0.0;
+    private double              minCommitMillis = Double.MAX_VALUE;
+    private int                 bestActive;
+    private double              bestRate = 0.0;
+
+    ConcurrencyController(AdaptiveLimit limit, LoadDataWorker[] workers,
+                          int maxActive, int intervalMillis,
+                          int maxCommitMillis, int maxRetryPct)
+    {
+        this.limit = limit;
+        this.workers = workers;
+        this.maxActive = Math.max(1, maxActive);
+        this.intervalMillis = Math.max(1, intervalMillis);
+        this.maxCommitMillis = maxCommitMillis;
+        this.maxRetryPct = maxRetryPct;
+        this.bestActive = limit.getLimit();
+    }
+
+    public void run()
+    {
+        long    last = System.nanoTime();
+
+        while (!stopped)
+        {
+            try
+            {
+                Thread.sleep(intervalMillis);
+            }
+            catch (InterruptedException ie)
+            {
+                break;
+            }
+
+            long    now = System.nanoTime();
+            adjust((now - last) / 1e9);
+            last = now;
+        }
+    }
+
+    public void stop(Thread thread)
+    {
+        stopped = true;
+        thread.interrupt();
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+        System.out.printf("AIMD: finished with %d active workers " +
+                        "(best %d at %.1f rows/s)%n",
+                limit.getLimit(), bestActive, bestRate);
+    }
+
+    private void adjust(double seconds)
+    {
+        long    rows = 0;
+        long    commits = 0;
+        long    commitNanos = 0;
+        long    retries = 0;
+        int     active = limit.getLimit();
+        int     next = active;
+
+        for (LoadDataWorker w : workers)
+        {
+            LoadCounters    c = w.getCounters();
+
+            rows += c.rows.sum();
+            commits += c.commits.sum();
+            commitNanos += c.commitNanos.sum();
+            retries += c.retries.sum();
+        }
+
+        double  rate = (rows - lastRows) / seconds;
+        long    dCommits = commits - lastCommits;
+        double  commitMillis = (dCommits == 0) ? 0.0 :
+                (commitNanos - lastCommitNanos) / 1e6 / dCommits;
+        double  retryPct = (dCommits == 0) ? 0.0 :
+                100.0 * (retries - lastRetries) / dCommits;
+        double  commitLimit = (maxCommitMillis > 0) ? maxCommitMillis :
+                2.0 * minCommitMillis;
+
+        lastRows = rows;
+        lastCommits = commits;
+        lastCommitNanos = commitNanos;
+        lastRetries = retries;
+        if (dCommits == 0)
+            return;
+        minCommitMillis = Math.min(minCommitMillis, commitMillis);
+
+        if (commitMillis > commitLimit || retryPct > maxRetryPct)
+        {
+            next = Math.max(1, active / 2);
+            lastRate = 0.0;
+        }
+        else
+        {
+            if (rate > bestRate)
+            {
+                bestRate = rate;
+                bestActive = active;
+            }
+            if (rate > lastRate * (1.0 + NOISE))
+                next = Math.min(maxActive, active + 1);
+            lastRate = rate;
+        }
+
+        if (next != active)
+        {
+            limit.setLimit(next);
+            System.out.printf("AIMD: active %d -> %d (%.1f rows/s, " +
+                            "commit %.2fms, retries %.1f%%)%n",
+                    active, next, rate, commitMillis, retryPct);
+        }
+    }
+} // end ConcurrencyController
+
+
+/*
+ * RampController
+ *
+ *     Scaling curve: lets 1, 2, 4, ... up to all workers run, holding
+ *     every step for holdSeconds. Per step it measures rows/s and the
+ *     mean transaction latency. At the end it prints each step's
+ *     scaling efficiency, i.e. its throughput relative to n times that
+ *     of one worker, and the knee. The knee is the last step at which
+ *     the added workers still brought at least half of what a single
+ *     worker does.
+ */
+class RampController implements Runnable
+{
+    private static final double KNEE_GAIN = 0.5;
+
+    private AdaptiveLimit       limit;
+    private LoadDataWorker[]    workers;
+    private int[]               steps;
+    private long                holdMillis;
+    private double[]            rate;
+    private double[]            latencyMillis;
+    private volatile int        stepsDone = 0;
+    private int                 failedBefore;
+
+    RampController(AdaptiveLimit limit, LoadDataWorker[] workers,
+                   int[] steps, int holdSeconds)
+    {
+        this.failedBefore = Main.getFailedWorkers();
+        this.limit = limit;
+        this.workers = workers;
+        this.steps = steps;
+        this.holdMillis = Math.max(1, holdSeconds) * 1000L;
+        this.rate = new double[steps.length];
+        this.latencyMillis = new double[steps.length];
+    }
+
+    /*
+     * steps(max)
+     *
+     *     1, 2, 4, ... below max, then max itself.
+     */
+    public static int[] steps(int max)
+    {
+        List<Integer>   list = new ArrayList<Integer>();
+        int[]           steps;
+
+        for (int n = 1; n < max; n *= 2)
+            list.add(n);
+        list.add(Math.max(1, max));
+        steps = new int[list.size()];
+        for (int i = 0; i < steps.length; i++)
+            steps[i] = list.get(i);
+        return steps;
+    }
+
+    /*
+     * run()
+     *
+     *     Step through the worker counts. A step in which a worker gave
+     *     up ran with fewer workers than it claims, so the ramp stops
+     *     there and the curve only shows the steps before it. stop()
+     *     reports the failure.
+     */
+    public void run()
+    {
+        long[]  before = totals();
+        long    start = System.nanoTime();
+
+        for (int i = 0; i < steps.length; i++)
+        {
+            limit.setLimit(steps[i]);
+            try
+            {
+                Thread.sleep(holdMillis);
+            }
+            catch (InterruptedException ie)
+            {
+                return;
+            }
+
+            long[]  after = totals();
+            long    now = System.nanoTime();
+            long    txns = after[1] - before[1];
+
+            if (Main.getFailedWorkers() != failedBefore)
+                return;
+
+            rate[i] = (after[0] - before[0]) * 1e9 / (now - start);
+            latencyMillis[i] = (txns == 0) ? 0.0 :
+                    (after[2] - before[2]) / 1e6 / txns;
+            System.out.printf("Ramp: %d workers %.1f rows/s " +
+                            "mean transaction %.2fms%n",
+                    steps[i], rate[i], latencyMillis[i]);
+            before = after;
+            start = now;
+            stepsDone = i + 1;
+        }
+    }
+
+    public void stop(Thread thread)
+    {
+        int     knee = 0;
+        int     peak = 0;
+
+        thread.interrupt();
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+        if (Main.getFailedWorkers() != failedBefore)
+        {
+            System.err.printf("ERROR: ramp: %d worker(s) failed %s, " +
+                            "the scaling curve only covers the steps " +
+                            "before that%n",
+                    Main.getFailedWorkers() - failedBefore,
+                    (stepsDone < steps.length) ? "during the step of " +
+                            steps[stepsDone] + " workers" :
+                            "after the last step");
+        }
+        if (stepsDone == 0 || rate[0] <= 0.0)
+            return;
+
+        System.out.println("");
+        System.out.println("Scaling curve");
+        System.out.println("  workers       rows/s   efficiency  " +
+                "marginal   txn ms");
+        for (int i = 0; i < stepsDone; i++)
+        {
+            double  efficiency = rate[i] / (steps[i] * rate[0]);
+            double  marginal = (i == 0) ? 1.0 :
+                    (rate[i] - rate[i - 1]) /
+                            ((steps[i] - steps[i - 1]) * rate[0]);
+
+            if (i > 0 && knee == i - 1 && marginal >= KNEE_GAIN)
+                knee = i;
+            if (rate[i] > rate[peak])
+                peak = i;
+            System.out.printf("  %7d %12.1f %11.1f%% %8.2f %8.2f%n",
+                    steps[i], rate[i], 100.0 * efficiency, marginal,
+                    latencyMillis[i]);
+        }
+        System.out.printf("Ramp: knee at %d workers, peak %.1f rows/s " +
+                        "at %d workers%n",
+                steps[knee], rate[peak], steps[peak]);
+    }
+
+    private long[] totals()
+    {
+        long[]  t = new long[3];
+
+        for (LoadDataWorker w : workers)
+        {
+            LoadCounters    c = w.getCounters();
+
+            t[0] += c.rows.sum();
+            t[1] += c.transactions.sum();
+            t[2] += c.transactionNanos.sum();
+        }
+        return t;
+    }
+} // end RampController
+
+
+/*
+ * LatencyHistogram
+ *
+ *     Log-linear histogram of latencies in microseconds, in the style
+ *     of HdrHistogram. Every power of two range is split into
+ *     SUB_BUCKETS linear buckets, so any recorded value is known to
+ *     within 1/SUB_BUCKETS (about 1.6%) at a fixed size of 16kB. The
+ *     class is not thread safe: each histogram has a single writer,
+ *     and histograms are merged with add() after the writers are done.
+ */
+class LatencyHistogram
+{
+    private static final int    SUB_BITS = 6;
+    private static final int    SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int    MAX_BITS = 36;      // about 19 hours
+    private static final long   MAX_VALUE = (1L << MAX_BITS) - 1;
+    private static final int    NUM_BUCKETS =
+            (MAX_BITS - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private long[]  counts = new long[NUM_BUCKETS];
+    private long    count = 0;
+    private long    sum = 0;
+    private long    max = 0;
+
+    public void record(long value)
+    {
+        if (value < 0)
+            value = 0;
+        if (value > MAX_VALUE)
+            value = MAX_VALUE;
+        counts[bucketOf(value)]++;
+        count++;
+        sum += value;
+        if (value > max)
+            max = value;
+    }
+
+    public void add(LatencyHistogram other)
+    {
+        for (int i = 0; i < NUM_BUCKETS; i++)
+            counts[i] += other.counts[i];
+        count += other.count;
+        sum += other.sum;
+        max = Math.max(max, other.max);
+    }
+
+    /*
+     * getValueAtPercentile(percentile)
+     *
+     *     The midpoint of the bucket holding the given percentile,
+     *     capped at the largest recorded value.
+     */
+    public long getValueAtPercentile(double percentile)
+    {
+        long    rank = (long)Math.ceil(percentile / 100.0 * count);
+        long    seen = 0;
+
+        if (count == 0)
+            return 0;
+        rank = Math.max(1, Math.min(rank, count));
+        for (int i = 0; i < NUM_BUCKETS; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(max, (lowestOf(i) + highestOf(i)) / 2);
+        }
+        return max;
+    }
+
+    public void reset()
+    {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    public long getCount()
+    {
+        return count;
+    }
+
+    public long getMax()
+    {
+        return max;
+    }
+
+    public double getMean()
+    {
+        return (count == 0) ? 0.0 : (double)sum / count;
+    }
+
+    /*
+     * Values below SUB_BUCKETS get a bucket each. Above that the shift
+     * is how far the value is right shifted to leave SUB_BITS + 1
+     * significant bits, whose top bit is always set.
+     */
+    private static int bucketOf(long value)
+    {
+        if (value < SUB_BUCKETS)
+            return (int)value;
+
+        int     shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+
+        return (shift + 1) * SUB_BUCKETS +
+                (int)((value >>> shift) - SUB_BUCKETS);
+    }
+
+    private static long lowestOf(int bucket)
+    {
+        int     shift = bucket / SUB_BUCKETS - 1;
+
+        if (shift < 0)
+            return bucket;
+        return (long)(bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+    }
+
+    private static long highestOf(int bucket)
+    {
+        int     shift = bucket / SUB_BUCKETS - 1;
+
+        if (shift < 0)
+            return bucket;
+        return lowestOf(bucket) + (1L << shift) - 1;
+    }
+} // end LatencyHistogram
+
+
+/*
+ * LoadCounters
+ *
+ *     Running totals of one worker, read by the IntervalReporter while
+ *     the worker is still adding to them.
+ */
+class LoadCounters
+{
+    public final LongAdder  rows = new LongAdder();
+    public final LongAdder  statements = new LongAdder();
+    public final LongAdder  commits = new LongAdder();
+    public final LongAdder  commitNanos = new LongAdder();
+    public final LongAdder  retries = new LongAdder();
+    public final LongAdder  transactions = new LongAdder();
+    public final LongAdder  transactionNanos = new LongAdder();
+}
+
+
+/*
+ * IntervalReporter
+ *
+ *     Background thread that prints rows/s, statements/s and commits/s
+ *     of every worker and of all of them together every interval
+ *     seconds, and optionally appends the same series to a CSV file.
+ */
+class IntervalReporter implements Runnable
+{
+    private LoadDataWorker[]    workers;
+    private long                intervalMillis;
+    private BufferedWriter      csv = null;
+    private long                startNanos;
+    private long                lastNanos;
+    private long[][]            last;
+    private volatile boolean    stopped = false;
+
+    IntervalReporter(LoadDataWorker[] workers, int intervalSeconds,
+                     String csvFile)
+            throws IOException
+    {
+        this.workers = workers;
+        this.intervalMillis = intervalSeconds * 1000L;
+        this.last = new long[workers.length][3];
+        this.startNanos = System.nanoTime();
+        this.lastNanos = startNanos;
+        if (csvFile != null)
+        {
+            csv = new BufferedWriter(new FileWriter(csvFile));
+            csv.write("elapsed_s,worker,rows_per_s,statements_per_s," +
+                    "commits_per_s\n");
+        }
+    }
+
+    public void run()
+    {
+        while (!stopped)
+        {
+            try
+            {
+                Thread.sleep(intervalMillis);
+            }
+            catch (InterruptedException ie)
+            {
+                break;
+            }
+            report();
+        }
+    }
+
+    /*
+     * stop(thread)
+     *
+     *     End the reporter and print the last, partial interval.
+     */
+    public void stop(Thread thread)
+    {
+        stopped = true;
+        thread.interrupt();
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException ie)
+        {
+            Thread.currentThread().interrupt();
+        }
+        report();
+        if (csv != null)
+        {
+            try
+            {
+                csv.close();
+            }
+            catch (IOException ie)
+            {
+                System.err.println("ERROR: " + ie.getMessage());
+            }
+        }
+    }
+
+    private synchronized void report()
+    {
+        long    now = System.nanoTime();
+        double  seconds = (now - lastNanos) / 1e9;
+        double  elapsed = (now - startNanos) / 1e9;
+        long[]  total = new long[3];
+
+        if (seconds <= 0.0)
+            return;
+        for (int i = 0; i < workers.length; i++)
+        {
+            LoadCounters    c = workers[i].getCounters();
+            long[]          cur = {c.rows.sum(), c.statements.sum(),
+                                   c.commits.sum()};
+
+            for (int k = 0; k < 3; k++)
+            {
+                long delta = cur[k] - last[i][k];
+
+                total[k] += delta;
+                last[i][k] = cur[k];
+                cur[k] = delta;
+            }
+            print(elapsed, String.format("worker %03d", i),
+                    String.valueOf(i), cur, seconds);
+        }
+        print(elapsed, "total     ", "total", total, seconds);
+        lastNanos = now;
+    }
+
+    private void print(double elapsed, String label, String csvLabel,
+                       long[] delta, double seconds)
+    {
+        System.out.printf("Interval %8.1fs %s: rows/s %10.1f " +
+                        "stmts/s %9.1f commits/s %9.1f%n",
+                elapsed, label, delta[0] / seconds, delta[1] / seconds,
+                delta[2] / seconds);
+        if (csv == null)
+            return;
+        try
+        {
+            csv.write(String.format(Locale.ROOT, "%.1f,%s,%.1f,%.1f,%.1f%n",
+                    elapsed, csvLabel, delta[0] / seconds,
+                    delta[1] / seconds, delta[2] / seconds));
+            csv.flush();
+        }
+        catch (IOException ie)
+        {
+            System.err.println("ERROR: " + ie.getMessage());
+            csv = null;
+        }
+    }
+} // end IntervalReporter
+
+
+/*
+ * LoadMode
+ *
+ *     What a value of the "update" property does: the log verb, how
+ *     many rows one transaction covers, which ol_i_id it writes and
+ *     whether it needs complete rows or only the keys. Generation is
+ *     driven from here so that workers and pipeline generators batch
+ *     the same way.
+ */
+class LoadMode
+{
+    public static final int PER_ORDER = 0;      // one order per commit
+    public static final int PER_ROWS = 1;       // commitbatch rows
+    public static final int PER_ORDERS = 2;     // commitbatch orders
+
+    private static final int RANDOM = OrderLineBatch.RANDOM_ITEM;
+    private static final int NONE = OrderLineBatch.NO_ITEM;
+
+    private static final LoadMode[] MODES = {
+            new LoadMode("insert", "Loading", PER_ORDER, RANDOM, false, false),
+            new LoadMode("update", "Updating", PER_ORDER, RANDOM, true, true),
+            new LoadMode("update_batch", "Updating",
+                    PER_ROWS, RANDOM, true, true),
+            new LoadMode("delete_batch", "deleting",
+                    PER_ROWS, NONE, true, true),
+            new LoadMode("insert_update", "Insert_updating",
+                    PER_ROWS, 12345, false, true),
+            new LoadMode("insert_update_bucket", "Insert_updating 1234567",
+                    PER_ROWS, 1234567, false, true),
+            new LoadMode("update_batch_value", "Insert_updating 1234",
+                    PER_ROWS, NONE, true, true),
+            new LoadMode("delete_batch_value", "Delete_valuing",
+                    PER_ROWS, NONE, true, true),
+            new LoadMode("insert_batch_value", "Inserting",
+                    PER_ROWS, RANDOM, false, false),
+            new LoadMode("upsert", "Upserting 12345678",
+                    PER_ORDERS, 12345678, false, true),
+            new LoadMode("upsert_batch_value", "Upserting batch value 123",
+                    PER_ROWS, 123, false, true),
+            new LoadMode("update_batch_value_list",
+                    "Upserting batch value list 1234",
+                    PER_ROWS, NONE, true, true),
+            new LoadMode("insert_batch_param", "Inserting param",
+                    PER_ROWS, RANDOM, false, false),
+            new LoadMode("upsert_batch_param", "Upserting param",
+                    PER_ROWS, 123, false, true),
+            new LoadMode("update_batch_param", "Updating param",
+                    PER_ROWS, NONE, true, true),
+            new LoadMode("update_batch_array", "Updating array",
+                    PER_ROWS, RANDOM, true, true),
+            new LoadMode("delete_batch_array", "Deleting array",
+                    PER_ROWS, NONE, true, true),
+            new LoadMode("upsert_batch_array", "Upserting array",
+                    PER_ROWS, 12345678, false, true),
+            new LoadMode("copy", "Copying", PER_ROWS, RANDOM, false, false),
+            new LoadMode("copy_binary", "Copying binary",
+                    PER_ROWS, RANDOM, false, false),
+            new LoadMode("generate", "Generating",
+                    PER_ROWS, RANDOM, false, true),
+            new LoadMode("csvimport", "Importing", PER_ROWS, NONE, false, false),
+            new LoadMode("record", "Recording", PER_ROWS, RANDOM, false, true)
+    };
+
+    public final String     name;
+    public final String     verb;
+    public final int        unit;
+    public final int        itemId;
+    public final boolean    keysOnly;
+    public final boolean    repeatable;     // may write the same rows again
+
+    private LoadMode(String name, String verb, int unit, int itemId,
+                     boolean keysOnly, boolean repeatable)
+    {
+        this.name = name;
+        this.verb = verb;
+        this.unit = unit;
+        this.itemId = itemId;
+        this.keysOnly = keysOnly;
+        this.repeatable = repeatable;
+    }
+
+    /*
+     * forName(flag)
+     *
+     *     The mode for a flag value, or null if there is no such mode.
+     */
+    public static LoadMode forName(String flag)
+    {
+        for (LoadMode mode : MODES)
+            if (mode.name.equals(flag.trim().toLowerCase()))
+                return mode;
+        return null;
+    }
+
+    /*
+     * batchRows(commitbatch)
+     *
+     *     Rows per transaction for a commitbatch setting. Zero or less
+     *     means one transaction per job.
+     */
+    public int batchRows(int commitbatch)
+    {
+        if (unit == PER_ORDER)
+            return OrderLineBatch.LINES_PER_ORDER;
+        if (commitbatch <= 0)
+            return OrderLineBatch.ROWS_PER_WAREHOUSE;
+        if (unit == PER_ORDERS)
+            return commitbatch * OrderLineBatch.LINES_PER_ORDER;
+        return commitbatch;
+    }
+
+    /*
+     * fill(batch, rnd, job, firstRow, count)
+     *
+     *     Generate the next batch of this mode, or read it from the
+     *     replay file when there is one.
+     */
+    public int fill(OrderLineBatch batch, jTPCCRandom rnd, LoadJob job,
+                    int firstRow, int count)
+    {
+        OrderLineReplayFile replay = Main.getReplayFile();
+
+        if (replay != null && !name.equals("record"))
+            return replay.fill(batch, job.w_id, firstRow,
+                    Math.min(count, job.endRow() - firstRow), itemId,
+                    keysOnly);
+        if (keysOnly)
+            return batch.fillKeys(rnd, job, firstRow, count, itemId);
+        return batch.fill(rnd, job, firstRow, count, itemId);
+    }
+} // end LoadMode
+
+
+/*
+ * OrderLinePipeline
+ *
+ *     Bounded hand-off between generator threads and executor workers.
+ *     Filled batches travel through the full queue, and executed ones
+ *     come back through the free queue. After start-up no batch is
+ *     allocated again. END is handed to every executor when the last
+ *     generator is done.
+ */
+class OrderLinePipeline
+{
+    public static final OrderLineBatch END = new OrderLineBatch(1);
+
+    private ArrayBlockingQueue<OrderLineBatch>  free;
+    private ArrayBlockingQueue<OrderLineBatch>  full;
+    private AtomicInteger       generatorsLeft;
+    private AtomicInteger       executorsLeft;
+    private int                 numExecutors;
+    private volatile boolean    aborted = false;
+
+    OrderLinePipeline(int depth, int numGenerators, int numExecutors,
+                      int batchRows)
+    {
+        int     numBatches = depth + numGenerators + numExecutors;
+
+        this.free = new ArrayBlockingQueue<OrderLineBatch>(numBatches);
+        this.full = new ArrayBlockingQueue<OrderLineBatch>(
+                Math.max(depth, numExecutors));
+        for (int i = 0; i < numBatches; i++)
+            free.add(new OrderLineBatch(batchRows));
+        this.generatorsLeft = new AtomicInteger(numGenerators);
+        this.executorsLeft = new AtomicInteger(numExecutors);
+        this.numExecutors = numExecutors;
+    }
+
+    /*
+     * takeFree()
+     *
+     *     An empty batch to fill, or null if all executors are gone.
+     */
+    public OrderLineBatch takeFree()
+            throws InterruptedException
+    {
+        OrderLineBatch  b;
+
+        while ((b = free.poll(100, TimeUnit.MILLISECONDS)) == null)
+        {
+            if (aborted)
+                return null;
+        }
+        return b;
+    }
+
+    public boolean putFull(OrderLineBatch b)
+            throws InterruptedException
+    {
+        while (!full.offer(b, 100, TimeUnit.MILLISECONDS))
+        {
+            if (aborted)
+                return false;
+        }
+        return true;
+    }
+
+    public OrderLineBatch takeFull()
+            throws InterruptedException
+    {
+        return full.take();
+    }
+
+    public void recycle(OrderLineBatch b)
+    {
+        free.add(b);
+    }
+
+    public void generatorDone()
+            throws InterruptedException
+    {
+        if (generatorsLeft.decrementAndGet() == 0)
+        {
+            for (int i = 0; i < numExecutors; i++)
+                putFull(END);
+        }
+    }
+
+    /*
+     * executorDone()
+     *
+     *     Called by every executor on exit. When the last one is gone,
+     *     normally or by an error, the generators stop waiting.
+     */
+    public void executorDone()
+    {
+        if (executorsLeft.decrementAndGet() == 0)
+            aborted = true;
+    }
+} // end OrderLinePipeline
+
+
+/*
+ * BatchGenerator
+ *
+ *     Generator thread of the pipeline mode. Takes jobs from the
+ *     scheduler and fills batches for the executors.
+ */
+class BatchGenerator implements Runnable
+{
+    private int                 generator;
+    private jTPCCRandom         rnd;
+    private LoadMode            mode;
+    private int                 commitbatch;
+    private OrderLinePipeline   pipeline;
+
+    BatchGenerator(int generator, jTPCCRandom rnd, LoadMode mode,
+                   int commitbatch, OrderLinePipeline pipeline)
+    {
+        this.generator = generator;
+        this.rnd = rnd;
+        this.mode = mode;
+        this.commitbatch = commitbatch;
+        this.pipeline = pipeline;
+    }
+
+    public void run()
+    {
+        LoadJob     job;
+        int         rows = mode.batchRows(commitbatch);
+        BatchTuner  tuner;
+
+        Main.awaitStart();
+        tuner = Main.getBatchTuner();
+        try
+        {
+            try
+            {
+                while ((job = Main.getNextJob(generator)) != null)
+                {
+                    for (int row = job.firstRow(); row < job.endRow() &&
+                            !Main.isTimeUp(); row += rows)
+                    {
+                        OrderLineBatch  b = pipeline.takeFree();
+
+                        if (b == null)
+                            return;
+                        if (tuner != null)
+                            rows = tuner.batchRows();
+                        mode.fill(b, rnd, job, row, rows);
+                        if (!pipeline.putFull(b))
+                            return;
+                    }
+                }
+            }
+            finally
+            {
+                pipeline.generatorDone();
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            System.err.println("ERROR: generator " + generator + " - " +
+                    ie.getMessage());
+        }
+    }
+} // end BatchGenerator
+
+
+/*
+ * SessionPool
+ *
+ *     Bounded pool of database sessions. Each session is a worker with
+ *     its own connection and prepared statements. A session that hit
+ *     an error is discarded. Once no session is left, borrow() returns
+ *     null so that the remaining tasks end instead of hanging.
+ */
+class SessionPool
+{
+    private ArrayBlockingQueue<LoadDataWorker>  idle;
+    private AtomicInteger                       alive;
+
+    SessionPool(LoadDataWorker[] sessions)
+    {
+        this.idle = new ArrayBlockingQueue<LoadDataWorker>(sessions.length);
+        this.idle.addAll(Arrays.asList(sessions));
+        this.alive = new AtomicInteger(sessions.length);
+    }
+
+    public LoadDataWorker borrow()
+            throws InterruptedException
+    {
+        LoadDataWorker  s;
+
+        while ((s = idle.poll(100, TimeUnit.MILLISECONDS)) == null)
+        {
+            if (alive.get() == 0)
+                return null;
+        }
+        return s;
+    }
+
+    public void release(LoadDataWorker s)
+    {
+        idle.add(s);
+    }
+
+    public void discard(LoadDataWorker s)
+    {
+        alive.decrementAndGet();
+        try
+        {
+            s.closeSession();
+        }
+        catch (SQLException se)
+        {
+            // the session is already broken
+        }
+    }
+
+    public void closeAll()
+    {
+        LoadDataWorker  s;
+
+        while ((s = idle.poll()) != null)
+        {
+            try
+            {
+                s.closeSession();
+            }
+            catch (SQLException se)
+            {
+                System.err.println("ERROR: " + se.getMessage());
+            }
+        }
+    }
+} // end SessionPool
+
+
+/*
+ * PooledWorkerTask
+ *
+ *     Worker when there are more workers than sessions. Takes jobs from
+ *     the scheduler like a LoadDataWorker does and borrows a session
+ *     from the pool for each of them.
+ */
+class PooledWorkerTask implements Runnable
+{
+    private int             task;
+    private SessionPool     pool;
+
+    PooledWorkerTask(int task, SessionPool pool)
+    {
+        this.task = task;
+        this.pool = pool;
+    }
+
+    public void run()
+    {
+        LoadJob         job;
+        LoadDataWorker  session;
+
+        Main.awaitStart();
+        try
+        {
+            while ((job = Main.getNextJob(task)) != null)
+            {
+                if ((session = pool.borrow()) == null)
+                    return;
+                try
+                {
+                    session.execJob(job);
+                }
+                catch (SQLException se)
+                {
+                    pool.discard(session);
+                    Main.workerFailed();
+                    while (se != null)
+                    {
+                        System.err.println("Task " + task + ": ERROR: " +
+                                se.getMessage());
+                        se = se.getNextException();
+                    }
+                    return;
+                }
+                catch (Exception e)
+                {
+                    pool.discard(session);
+                    Main.workerFailed();
+                    System.err.println("Task " + task + ": ERROR: " +
+                            e.getMessage());
+                    e.printStackTrace();
+                    return;
+                }
+                pool.release(session);
+            }
+        }
+        catch (InterruptedException ie)
+        {
+            System.err.println("ERROR: task " + task + " - " +
+                    ie.getMessage());
+        }
+    }
+} // end PooledWorkerTask
+
+
+/*
+ * SqlTextBuilder
+ *
+ *     Builds multi-row SQL statements with literal values. The buffer
+ *     keeps its capacity between statements and every field is appended
+ *     in constant time, so a statement of n rows costs O(n) instead of
+ *     the O(n^2) of repeated String concatenation.
+ */
+class SqlTextBuilder
+{
+    private StringBuilder   sb;
+    private int             rows = 0;
+    private boolean         firstField = true;
+
+    /*
+     * The "yyyy-mm-dd hh:mm:ss." part of the last timestamp literal.
+     */
+    private long            tsSecond = Long.MIN_VALUE;
+    private String          tsPrefix = null;
+
+    SqlTextBuilder(int initialCapacity)
+    {
+        this.sb = new StringBuilder(initialCapacity);
+    }
+
+    public void reset()
+    {
+        sb.setLength(0);
+        rows = 0;
+    }
+
+    public int rows()
+    {
+        return rows;
+    }
+
+    public int length()
+    {
+        return sb.length();
+    }
+
+    public SqlTextBuilder append(String text)
+    {
+        sb.append(text);
+        return this;
+    }
+
+    public void beginRow()
+    {
+        if (rows > 0)
+            sb.append(',');
+        sb.append('(');
+        firstField = true;
+    }
+
+    public void endRow()
+    {
+        sb.append(')');
+        rows++;
+    }
+
+    public void appendInt(int val)
+    {
+        delimiter();
+        sb.append(val);
+    }
+
+    public void appendNull()
+    {
+        delimiter();
+        sb.append("NULL");
+    }
+
+    /*
+     * appendNumeric(cents)
+     *
+     *     Append a numeric literal with two decimals given in hundredths.
+     */
+    public void appendNumeric(long cents)
+    {
+        delimiter();
+        if (cents < 0)
+        {
+            sb.append('-');
+            cents = -cents;
+        }
+        sb.append(cents / 100).append('.');
+        sb.append((char)('0' + (cents % 100) / 10));
+        sb.append((char)('0' + cents % 10));
+    }
+
+    /*
+     * appendTimestamp(millis)
+     *
+     *     Append a quoted timestamp literal in the JVM's local time zone.
+     */
+    public void appendTimestamp(long millis)
+    {
+        long    second = Math.floorDiv(millis, 1000L);
+        int     ms = (int)Math.floorMod(millis, 1000L);
+
+        if (second != tsSecond)
+        {
+            tsPrefix = new java.sql.Timestamp(second * 1000L).toString()
+                    .substring(0, 19) + ".";
+            tsSecond = second;
+        }
+
+        delimiter();
+        sb.append('\'').append(tsPrefix);
+        sb.append((char)('0' + ms / 100));
+        sb.append((char)('0' + (ms / 10) % 10));
+        sb.append((char)('0' + ms % 10));
+        sb.append('\'');
+    }
+
+    /*
+     * appendString(str)
+     *
+     *     Append a quoted string literal, doubling embedded quotes.
+     */
+    public void appendString(String str)
+    {
+        delimiter();
+        sb.append('\'');
+        for (int i = 0; i < str.length(); i++)
+        {
+            char c = str.charAt(i);
+            if (c == '\'')
+                sb.append('\'');
+            sb.append(c);
+        }
+        sb.append('\'');
+    }
+
+    /*
+     * appendBytes(src, off, len)
+     *
+     *     Append a quoted literal of single byte characters that are
+     *     known to need no escaping.
+     */
+    public void appendBytes(byte[] src, int off, int len)
+    {
+        delimiter();
+        sb.append('\'');
+        for (int i = off; i < off + len; i++)
+            sb.append((char)src[i]);
+        sb.append('\'');
+    }
+
+    public String toString()
+    {
+        return sb.toString();
+    }
+
+    private void delimiter()
+    {
+        if (firstField)
+        {
+            firstField = false;
+            return;
+        }
+        sb.append(',');
+    }
+} // end SqlTextBuilder
+
+
+/*
+ * MultiRowStatementCache
+ *
+ *     Prepared multi-row statements of the form head + n * row + tail,
+ *     one per row count, cached per connection. With a fixed commitbatch
+ *     a worker only ever needs the full batch size and the remainder,
+ *     so the server can reuse its plans instead of parsing a new
+ *     literal statement for every batch.
+ */
+class MultiRowStatementCache
+{
+    /*
+     * The v3 protocol carries the parameter count in an int16.
+     */
+    public static final int MAX_PARAMS = 32767;
+
+    private Connection      dbConn;
+    private String          head;
+    private String          row;
+    private String          tail;
+    private int             paramsPerRow;
+    private HashMap<Integer, PreparedStatement> cache =
+            new HashMap<Integer, PreparedStatement>();
+
+    MultiRowStatementCache(Connection dbConn, String head, String row,
+                           String tail, int paramsPerRow)
+    {
+        this.dbConn = dbConn;
+        this.head = head;
+        this.row = row;
+        this.tail = tail;
+        this.paramsPerRow = paramsPerRow;
+    }
+
+    /*
+     * maxRows()
+     *
+     *     The largest row count a single statement can bind.
+     */
+    public int maxRows()
+    {
+        return MAX_PARAMS / paramsPerRow;
+    }
+
+    public int paramsPerRow()
+    {
+        return paramsPerRow;
+    }
+
+    public PreparedStatement get(int rows)
+            throws SQLException
+    {
+        PreparedStatement   stmt = cache.get(rows);
+
+        if (stmt == null)
+        {
+            StringBuilder   sql = new StringBuilder(head.length() +
+                    rows * (row.length() + 1) + tail.length());
+
+            sql.append(head);
+            for (int i = 0; i < rows; i++)
+            {
+                if (i > 0)
+                    sql.append(',');
+                sql.append(row);
+            }
+            sql.append(tail);
+
+            stmt = dbConn.prepareStatement(sql.toString());
+            stmt.unwrap(PGStatement.class).setPrepareThreshold(1);
+            cache.put(rows, stmt);
+        }
+        return stmt;
+    }
+
+    public void close()
+            throws SQLException
+    {
+        for (PreparedStatement stmt : cache.values())
+            stmt.close();
+        cache.clear();
+    }
+} // end MultiRowStatementCache
+
+
+class LoadDataWorker implements Runnable {
+    private int worker;
+    private Connection dbConn;
+    private jTPCCRandom rnd;
+    private String flag;
+    private LoadMode mode;
+    private int commitbatch;
+    private OrderLinePipeline pipeline = null;
+
+    private StringBuffer sb;
+    private Formatter fmt;
+
+    private long busyNanos = 0;
+    private int jobsDone = 0;
+    private int jobsStolen = 0;
+
+    /*
+     * Latencies of the database calls, one histogram per operation.
+     * Only the thread running this worker (or holding it as a pooled
+     * session) records, so no locking is needed. main() merges them
+     * after all workers are done.
+     */
+    public static final int OP_EXECUTE_BATCH = 0;
+    public static final int OP_EXECUTE = 1;
+    public static final int OP_COMMIT = 2;
+    public static final int OP_INTENDED = 3;
+    public static final int OP_TRANSACTION = 4;
+    public static final String[] OP_NAMES = {
+            "executeBatch", "execute", "commit", "intendedResponse",
+            "transaction"};
+    private LatencyHistogram[] latency = {
+            new LatencyHistogram(), new LatencyHistogram(),
+            new LatencyHistogram(), new LatencyHistogram(),
+            new LatencyHistogram()};
+    private LoadCounters counters = new LoadCounters();
 
     private boolean writeCSV = false;
     private String csvNull = null;
+    private PGCopyTextEncoder csvText = null;
+    private CSVChannelWriter csvOut = null;
+    private int csvSlot = -1;
+
+    private PreparedStatement stmtOrderLine = null;
+    private PreparedStatement stmtUpdateOrderLine = null;
+    private PreparedStatement stmtInsertUpdateOrderLine = null;
+    private PreparedStatement stmtInsertUpdateBucketOrderLine = null;
+    private PreparedStatement stmtUpsertBucketOrderLine = null;
+    private PreparedStatement stmtDeleteOrderLine = null;
+    private PreparedStatement stmtUpdateArrayOrderLine = null;
+    private PreparedStatement stmtDeleteArrayOrderLine = null;
+    private PreparedStatement stmtUpsertArrayOrderLine = null;
+    private Statement stmtSqlText = null;
+
+    static final String INSERT_VALUES_HEAD =
+            "INSERT INTO bmsql_order_line (" +
+                    "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
+                    "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
+                    "  ol_amount, ol_dist_info) " +
+                    "VALUES ";
+    private static final String UPSERT_VALUES_HEAD =
+            "UPSERT INTO bmsql_order_line@{no_full_scan} (" +
+                    "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
+                    "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
+                    "  ol_amount, ol_dist_info) " +
+                    "VALUES ";
+
+    private static final String COPY_ORDER_LINE =
+            "COPY bmsql_order_line (" +
+                    "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
+                    "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
+                    "  ol_amount, ol_dist_info) " +
+                    "FROM STDIN";
+    private static final String COPY_ORDER_LINE_BINARY =
+            COPY_ORDER_LINE + " WITH BINARY";
+    private static final String COPY_ORDER_LINE_CSV =
+            "COPY bmsql_order_line (" +
+                    "  ol_w_id, ol_d_id, ol_o_id, ol_number, ol_i_id, " +
+                    "  ol_delivery_d, ol_amount, ol_supply_w_id, " +
+                    "  ol_quantity, ol_dist_info) " +
+                    "FROM STDIN WITH CSV NULL ";
+    private static final int IMPORT_MESSAGE_SIZE = 1048576;
+    private static final int COPY_BUFFER_SIZE = 65536;
+    private PGCopyEncoder copyText = null;
+    private PGCopyEncoder copyBinary = null;
+
+    private MultiRowStatementCache insertParamCache = null;
+    private MultiRowStatementCache upsertParamCache = null;
+    private MultiRowStatementCache updateParamCache = null;
+
+    private OrderLineBatch batch = null;
+    private java.sql.Timestamp[] deliveryTsArray = new java.sql.Timestamp[0];
+
+    /*
+     * Parameter arrays of upsert_batch_array. createArrayOf() takes the
+     * whole array, so they are sized to the batch and only replaced when
+     * the batch size changes.
+     */
+    private java.sql.Timestamp[] deliveryParam = new java.sql.Timestamp[0];
+    private double[] amountParam = new double[0];
+    private String[] distInfoParam = new String[0];
+    private SqlTextBuilder sqlText = new SqlTextBuilder(4096);
+    private java.sql.Timestamp deliveryTs = new java.sql.Timestamp(0);
+
+    private StringBuffer sbConfig = null;
+    private Formatter fmtConfig = null;
+    private StringBuffer sbItem = null;
+    private Formatter fmtItem = null;
+    private StringBuffer sbWarehouse = null;
+    private Formatter fmtWarehouse = null;
+    private StringBuffer sbDistrict = null;
+    private Formatter fmtDistrict = null;
+    private StringBuffer sbStock = null;
+    private Formatter fmtStock = null;
+    private StringBuffer sbCustomer = null;
+    private Formatter fmtCustomer = null;
+    private StringBuffer sbHistory = null;
+    private Formatter fmtHistory = null;
+    private StringBuffer sbOrder = null;
+    private Formatter fmtOrder = null;
+    private StringBuffer sbNewOrder = null;
+    private Formatter fmtNewOrder = null;
+
+    LoadDataWorker(int worker, String csvNull, jTPCCRandom rnd,String flag) {
+        this.worker = worker;
+        this.csvNull = csvNull;
+        this.rnd = rnd;
+        this.flag = flag;
+        this.mode = LoadMode.forName(flag);
+
+        this.sb = new StringBuffer();
+        this.fmt = new Formatter(sb);
+        this.writeCSV = true;
+        this.batch = new OrderLineBatch(OrderLineBatch.LINES_PER_ORDER);
+
+        this.sbConfig = new StringBuffer();
+        this.fmtConfig = new Formatter(sbConfig);
+        this.sbItem = new StringBuffer();
+        this.fmtItem = new Formatter(sbItem);
+        this.sbWarehouse = new StringBuffer();
+        this.fmtWarehouse = new Formatter(sbWarehouse);
+        this.sbDistrict = new StringBuffer();
+        this.fmtDistrict = new Formatter(sbDistrict);
+        this.sbStock = new StringBuffer();
+        this.fmtStock = new Formatter(sbStock);
+        this.sbCustomer = new StringBuffer();
+        this.fmtCustomer = new Formatter(sbCustomer);
+        this.sbHistory = new StringBuffer();
+        this.fmtHistory = new Formatter(sbHistory);
+        this.sbOrder = new StringBuffer();
+        this.fmtOrder = new Formatter(sbOrder);
+        this.csvText = new PGCopyTextEncoder(COPY_BUFFER_SIZE, ',', csvNull);
+        if (Main.getOrderLineCSV() != null)
+            this.csvOut = Main.getOrderLineCSV().newWriter(COPY_BUFFER_SIZE);
+        this.sbNewOrder = new StringBuffer();
+        this.fmtNewOrder = new Formatter(sbNewOrder);
+    }
+
+    LoadDataWorker(int worker, Connection dbConn, jTPCCRandom rnd,String flag,int commitbatch)
+            throws SQLException {
+        this.worker = worker;
+        this.dbConn = dbConn;
+        this.rnd = rnd;
+        this.flag = flag;
+        this.mode = LoadMode.forName(flag);
+        this.commitbatch = commitbatch;
+
+        this.sb = new StringBuffer();
+        this.fmt = new Formatter(sb);
+        this.copyText = new PGCopyTextEncoder(COPY_BUFFER_SIZE);
+        this.copyBinary = new PGCopyBinaryEncoder(COPY_BUFFER_SIZE, 10,
+                Main.getCopyIntSize());
+        this.batch = new OrderLineBatch((Main.getBatchTuner() != null) ?
+                Main.getBatchTuner().maxRows() : mode.batchRows(commitbatch));
+
+        stmtUpdateArrayOrderLine = dbConn.prepareStatement(
+                "update bmsql_order_line " +
+                        "  set ol_i_id = d.i " +
+                        "  from unnest(?::INT[], ?::INT[], ?::INT[], ?::INT[], ?::INT[]) " +
+                        "    as d(o, dd, w, n, i) " +
+                        "  where ol_o_id = d.o and ol_d_id = d.dd and " +
+                        "ol_w_id = d.w and ol_number = d.n"
+        );
+        stmtDeleteArrayOrderLine = dbConn.prepareStatement(
+                "delete from bmsql_order_line " +
+                        "  where (ol_o_id, ol_d_id, ol_w_id, ol_number) in (" +
+                        "    select * from unnest(?::INT[], ?::INT[], ?::INT[], ?::INT[]))"
+        );
+        stmtUpsertArrayOrderLine = dbConn.prepareStatement(
+                "upsert INTO bmsql_order_line@{no_full_scan} (" +
+                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
+                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
+                        "  ol_amount, ol_dist_info) " +
+                        "select * from unnest(?::INT[], ?::INT[], ?::INT[], ?::INT[], " +
+                        "  ?::INT[], ?::INT[], ?::TIMESTAMP[], ?::INT[], " +
+                        "  ?::DECIMAL[], ?::VARCHAR[])"
+        );
+
+        insertParamCache = new MultiRowStatementCache(dbConn,
+                INSERT_VALUES_HEAD, "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", "", 10);
+        upsertParamCache = new MultiRowStatementCache(dbConn,
+                UPSERT_VALUES_HEAD, "(?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", "", 10);
+        updateParamCache = new MultiRowStatementCache(dbConn,
+                "update bmsql_order_line@{no_full_scan} " +
+                        "  set ol_i_id = 1234 " +
+                        "  from (values ",
+                "(?::INT, ?::INT, ?::INT, ?::INT)",
+                "  ) as data(d1,d2,d3,d4) where ol_o_id =data.d1 and  ol_d_id = data.d2 and " +
+                        "ol_w_id = data.d3 and ol_number =data.d4", 4);
+
+        stmtOrderLine = dbConn.prepareStatement(
+                "INSERT INTO bmsql_order_line (" +
+                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
+                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
+                        "  ol_amount, ol_dist_info) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
+        );
+        stmtUpdateOrderLine = dbConn.prepareStatement(
+                "update bmsql_order_line " +
+                        "  set ol_i_id = ? " +
+                        "  where ol_o_id =? and  ol_d_id = ? and " +
+                        "ol_w_id = ? and ol_number =?"
+        );
+
+        stmtDeleteOrderLine = dbConn.prepareStatement(
+                "delete from  bmsql_order_line " +
+                        "  where ol_o_id =? and  ol_d_id = ? and " +
+                        "ol_w_id = ? and ol_number =?"
+        );
+//        stmtInsertUpdateOrderLine = dbConn.prepareStatement(
+//                "INSERT INTO bmsql_order_line (" +
+//                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
+//                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
+//                        "  ol_amount, ol_dist_info) " +
+//                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+//                        "ON CONFLICT (ol_o_id, ol_d_id, ol_w_id, ol_number) DO UPDATE SET ol_i_id = excluded.ol_i_id"
+//        );
+        stmtInsertUpdateOrderLine = dbConn.prepareStatement(
+                "INSERT INTO bmsql_order_line (" +
+                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
+                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
+                        "  ol_amount, ol_dist_info) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                        "ON CONFLICT (bmsql_o_l,ol_o_id, ol_d_id, ol_w_id, ol_number) DO UPDATE SET ol_i_id = excluded.ol_i_id"
+        );
+
+        stmtInsertUpdateBucketOrderLine = dbConn.prepareStatement(
+                "INSERT INTO bmsql_order_line@{no_full_scan} (" +
+                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
+                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
+                        "  ol_amount, ol_dist_info) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+                        "ON CONFLICT (dbms_internal_ol_d_id_ol_number_ol_o_id_ol_w_id_shard_12,ol_o_id, ol_d_id, ol_w_id, ol_number) DO UPDATE SET ol_i_id = excluded.ol_i_id"
+        );
+        stmtUpsertBucketOrderLine = dbConn.prepareStatement(
+                "upsert INTO bmsql_order_line@{no_full_scan} (" +
+                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
+                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
+                        "  ol_amount, ol_dist_info) " +
+                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
+        );
+    }
+
+    /*
+     * warmUp()
+     *
+     * Have the server parse the statement this worker's mode executes,
+     * so the first measured batch does not pay for it. Modes that send
+     * SQL text or COPY have nothing to prepare. The statement's prepare
+     * threshold is only lowered for the describe and then put back, so
+     * the measured run keeps the driver's server-side prepare behaviour.
+     */
+    public void warmUp()
+            throws SQLException {
+        PreparedStatement stmt;
+        int rows = batch.capacity();
+
+        switch (mode.name) {
+            case "insert":
+                stmt = stmtOrderLine;
+                break;
+            case "update":
+            case "update_batch":
+                stmt = stmtUpdateOrderLine;
+                break;
+            case "delete_batch":
+                stmt = stmtDeleteOrderLine;
+                break;
+            case "insert_update":
+                stmt = stmtInsertUpdateOrderLine;
+                break;
+            case "insert_update_bucket":
+                stmt = stmtInsertUpdateBucketOrderLine;
+                break;
+            case "upsert":
+                stmt = stmtUpsertBucketOrderLine;
+                break;
+            case "insert_batch_param":
+                stmt = insertParamCache.get(Math.min(rows, insertParamCache.maxRows()));
+                break;
+            case "upsert_batch_param":
+                stmt = upsertParamCache.get(Math.min(rows, upsertParamCache.maxRows()));
+                break;
+            case "update_batch_param":
+                stmt = updateParamCache.get(Math.min(rows, updateParamCache.maxRows()));
+                break;
+            case "update_batch_array":
+                stmt = stmtUpdateArrayOrderLine;
+                break;
+            case "delete_batch_array":
+                stmt = stmtDeleteArrayOrderLine;
+                break;
+            case "upsert_batch_array":
+                stmt = stmtUpsertArrayOrderLine;
+                break;
+            default:
+                return;
+        }
+        PGStatement pgStmt = stmt.unwrap(PGStatement.class);
+        int threshold = pgStmt.getPrepareThreshold();
+
+        pgStmt.setPrepareThreshold(1);
+        try {
+            stmt.getParameterMetaData();
+        } finally {
+            pgStmt.setPrepareThreshold(threshold);
+        }
+        dbConn.commit();
+    }
+
+    /*
+     * setPipeline()
+     *
+     * Make this worker an executor that takes its batches from a
+     * pipeline instead of generating them itself.
+     */
+    public void setPipeline(OrderLinePipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
+    /*
+     * run()
+     */
+    public void run() {
+        LoadJob job;
+
+        Main.awaitStart();
+        try {
+            if (Main.getImportPlan() != null) {
+                runImport();
+            } else if (pipeline != null) {
+                runPipeline();
+            } else {
+                while ((job = Main.getNextJob(worker)) != null)
+                    execJob(job);
+            }
+
+            /*
+             * Close the DB connection if in direct DB mode.
+             */
+            closeSession();
+        } catch (SQLException se) {
+            Main.workerFailed();
+            while (se != null) {
+                fmt.format("Worker %03d: ERROR: %s", worker, se.getMessage());
+                System.err.println(sb.toString());
+                sb.setLength(0);
+                se = se.getNextException();
+            }
+        } catch (Exception e) {
+            Main.workerFailed();
+            fmt.format("Worker %03d: ERROR: %s", worker, e.getMessage());
+            System.err.println(sb.toString());
+            sb.setLength(0);
+            e.printStackTrace();
+            return;
+        } finally {
+            if (pipeline != null)
+                pipeline.executorDone();
+        }
+    } // End run()
+
+    /*
+     * execJob()
+     *
+     * Run one scheduled job on this worker's session. Pooled worker
+     * tasks call this directly while they hold the session.
+     */
+    public void execJob(LoadJob job)
+            throws SQLException, IOException {
+        long jobStart = System.nanoTime();
+
+        fmt.format("Worker %03d: %s Warehouse %6d",
+                worker, mode.verb, job.w_id);
+        System.out.println(sb.toString());
+        sb.setLength(0);
+        runJob(job);
+        flushCSV();
+        fmt.format("Worker %03d: %s Warehouse %6d done",
+                worker, mode.verb, job.w_id);
+        System.out.println(sb.toString());
+        sb.setLength(0);
+
+        busyNanos += System.nanoTime() - jobStart;
+        jobsDone++;
+        if (job.stolen)
+            jobsStolen++;
+    }
+
+    public void closeSession()
+            throws SQLException {
+        if (!writeCSV)
+            dbConn.close();
+    }
+
+    public long getBusyNanos() {
+        return busyNanos;
+    }
+
+    public int getJobsDone() {
+        return jobsDone;
+    }
+
+    public int getJobsStolen() {
+        return jobsStolen;
+    }
+
+    public LatencyHistogram getLatency(int op) {
+        return latency[op];
+    }
+
+    public LoadCounters getCounters() {
+        return counters;
+    }
+
+    /*
+     * runJob()
+     *
+     * Generate the rows of one job batch by batch and execute every
+     * batch right away.
+     */
+    private void runJob(LoadJob job)
+            throws SQLException, IOException {
+        int rows = mode.batchRows(commitbatch);
+        BatchTuner tuner = Main.getBatchTuner();
+        for (int row = job.firstRow(); row < job.endRow(); row += rows) {
+            if (Main.isTimeUp())
+                break;
+            if (tuner != null)
+                rows = tuner.batchRows();
+            mode.fill(batch, rnd, job, row, rows);
+            executePaced(batch);
+        }
+    }
+
+    /*
+     * executePaced()
+     *
+     * Execute a batch, in a rate limited run not before it is due. The
+     * response time from the intended start is recorded on top of the
+     * per call latencies, and the batch tuner, if any, gets the time
+     * the batch took.
+     */
+    private void executePaced(OrderLineBatch b)
+            throws SQLException, IOException {
+        OpenLoopPacer pacer = Main.getPacer();
+        BatchTuner tuner = Main.getBatchTuner();
+        long intended = 0;
+
+        if (pacer != null) {
+            intended = pacer.acquire();
+            if (Main.isTimeUp())
+                return;
+        }
+        AdaptiveLimit limit = Main.getActiveLimit();
+        if (limit != null)
+            limit.acquire();
+        try {
+            long start = System.nanoTime();
+            executeWithRetry(b);
+            long nanos = System.nanoTime() - start;
+            latency[OP_TRANSACTION].record(nanos / 1000);
+            counters.transactions.increment();
+            counters.transactionNanos.add(nanos);
+            counters.rows.add(b.size);
+            if (tuner != null)
+                tuner.record(b.size, System.nanoTime() - start);
+            if (pacer != null)
+                timed(OP_INTENDED, intended);
+        } finally {
+            if (limit != null)
+                limit.release();
+        }
+    }
+
+    /*
+     * executeWithRetry()
+     *
+     * Execute a batch and repeat the whole transaction up to maxRetries
+     * times if the database aborts it with a serialization failure
+     * (SQLSTATE 40001). The batch still holds the same rows, so the
+     * retry writes exactly the same data.
+     */
+    private void executeWithRetry(OrderLineBatch b)
+            throws SQLException, IOException {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                executeBatch(b);
+                return;
+            } catch (SQLException se) {
+                if (writeCSV || attempt >= Main.getMaxRetries() ||
+                        !isRetryable(se))
+                    throw se;
+                dbConn.rollback();
+                counters.retries.increment();
+            }
+        }
+    }
+
+    private static boolean isRetryable(SQLException se) {
+        for (; se != null; se = se.getNextException()) {
+            if ("40001".equals(se.getSQLState()))
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * runPipeline()
+     *
+     * Pipeline mode: execute batches that generator threads filled,
+     * then hand the buffers back for reuse.
+     */
+    private void runPipeline()
+            throws SQLException, IOException, InterruptedException {
+        OrderLineBatch b;
+
+        while ((b = pipeline.takeFull()) != OrderLinePipeline.END) {
+            long start = System.nanoTime();
+
+            try {
+                if (!Main.isTimeUp())
+                    executePaced(b);
+            } finally {
+                pipeline.recycle(b);
+            }
+            busyNanos += System.nanoTime() - start;
+            jobsDone++;
+        }
+        flushCSV();
+    }
+
+    /*
+     * runImport()
+     *
+     * csvimport mode: stream gzip files and chunks of the CSV files into
+     * the table until none are left, one COPY and one commit each. The
+     * mapped chunk goes to the driver as ByteBuffer slices of
+     * IMPORT_MESSAGE_SIZE, one CopyData message each, without a copy into
+     * the Java heap. A gzip file is decompressed on the fly.
+     */
+    private void runImport()
+            throws SQLException, IOException {
+        CSVImportPlan plan = Main.getImportPlan();
+        CopyManager copyApi = dbConn.unwrap(PGConnection.class).getCopyAPI();
+        String sql = COPY_ORDER_LINE_CSV + "'" +
+                Main.getCsvNullValue().replace("'", "''") + "'";
+        AdaptiveLimit limit = Main.getActiveLimit();
+
+        while (!Main.isTimeUp()) {
+            String gzipFile = plan.nextGzipFile();
+            ByteBuffer chunk = (gzipFile == null) ? plan.nextChunk() : null;
+            long start = System.nanoTime();
+            long rows;
+
+            if (gzipFile == null && chunk == null)
+                break;
+            if (limit != null)
+                limit.acquire();
+            try {
+                if (gzipFile != null) {
+                    try (InputStream in = new GZIPInputStream(
+                            new FileInputStream(gzipFile), COPY_BUFFER_SIZE)) {
+                        rows = copyApi.copyIn(sql, in, COPY_BUFFER_SIZE);
+                    }
+                } else {
+                    rows = copyChunk(copyApi, sql, chunk);
+                }
+                timed(OP_EXECUTE, start);
+                counters.statements.increment();
+                commit();
+            } finally {
+                if (limit != null)
+                    limit.release();
+            }
+
+            long nanos = System.nanoTime() - start;
+            latency[OP_TRANSACTION].record(nanos / 1000);
+            counters.transactions.increment();
+            counters.transactionNanos.add(nanos);
+            counters.rows.add(rows);
+            busyNanos += nanos;
+            jobsDone++;
+        }
+    }
+
+    private long copyChunk(CopyManager copyApi, String sql, ByteBuffer chunk)
+            throws SQLException {
+        CopyIn copyIn = copyApi.copyIn(sql);
+
+        try {
+            while (chunk.hasRemaining()) {
+                ByteBuffer slice = chunk.slice();
+                slice.limit(Math.min(slice.remaining(), IMPORT_MESSAGE_SIZE));
+                copyIn.writeToCopy(new ByteBufferByteStreamWriter(slice));
+                chunk.position(chunk.position() + slice.limit());
+            }
+            return copyIn.endCopy();
+        } finally {
+            if (copyIn.isActive())
+                copyIn.cancelCopy();
+        }
+    }
+
+    /*
+     * executeBatch()
+     *
+     * Send one generated batch to the database, or to the CSV file, the
+     * way the worker's mode does it. Every call ends with a commit.
+     */
+    private void executeBatch(OrderLineBatch b)
+            throws SQLException, IOException {
+        switch (mode.name) {
+            case "insert":
+                loadWarehouse(b);
+                break;
+            case "update":
+                Update(b);
+                break;
+            case "update_batch":
+                Update_batch(b);
+                break;
+            case "delete_batch":
+                delete_batch(b);
+                break;
+            case "insert_update":
+                insertBatch(stmtInsertUpdateOrderLine, b);
+                break;
+            case "insert_update_bucket":
+                insertBatch(stmtInsertUpdateBucketOrderLine, b);
+                break;
+            case "upsert":
+                insertBatch(stmtUpsertBucketOrderLine, b);
+                break;
+            case "update_batch_value":
+                update_batch_value(b);
+                break;
+            case "update_batch_value_list":
+                update_batch_value_list(b);
+                break;
+            case "delete_batch_value":
+                delete_batch_value(b);
+                break;
+            case "insert_batch_value":
+                insertValues(INSERT_VALUES_HEAD, b);
+                break;
+            case "upsert_batch_value":
+                insertValues(UPSERT_VALUES_HEAD, b);
+                break;
+            case "insert_batch_param":
+                insertParams(insertParamCache, b);
+                break;
+            case "upsert_batch_param":
+                insertParams(upsertParamCache, b);
+                break;
+            case "update_batch_param":
+                updateParams(updateParamCache, b);
+                break;
+            case "update_batch_array":
+                update_batch_array(b);
+                break;
+            case "delete_batch_array":
+                delete_batch_array(b);
+                break;
+            case "upsert_batch_array":
+                upsert_batch_array(b);
+                break;
+            case "copy":
+                copyBatch(b, copyText, COPY_ORDER_LINE);
+                break;
+            case "copy_binary":
+                copyBatch(b, copyBinary, COPY_ORDER_LINE_BINARY);
+                break;
+            case "generate":
+                break;
+            case "record":
+                Main.getReplayFile().write(b);
+                break;
+            default:
+                throw new IllegalStateException("unknown mode " + mode.name);
+        }
+    }
+
+    /* ----
+     * loadorderline()
+     *
+     * Load the content of the order_line table.
+     * ----
+     */
+    private void Update(OrderLineBatch b)
+            throws SQLException, IOException {
+        for (int i = 0; i < b.size; i++) {
+            bindUpdateOrderLine(stmtUpdateOrderLine, b, i);
+            timedExecute(stmtUpdateOrderLine);
+            commit();
+        }
+    }
+    private void Update_batch(OrderLineBatch b)
+            throws SQLException, IOException {
+        for (int i = 0; i < b.size; i++) {
+            bindUpdateOrderLine(stmtUpdateOrderLine, b, i);
+            stmtUpdateOrderLine.addBatch();
+        }
+        timedExecuteBatch(stmtUpdateOrderLine);
+        stmtUpdateOrderLine.clearBatch();
+        commit();
+    }
+
+    private void delete_batch(OrderLineBatch b)
+            throws SQLException, IOException {
+        for (int i = 0; i < b.size; i++) {
+            bindOrderLineKey(stmtDeleteOrderLine, 1, b, i);
+            stmtDeleteOrderLine.addBatch();
+        }
+        timedExecuteBatch(stmtDeleteOrderLine);
+        stmtDeleteOrderLine.clearBatch();
+        commit();
+    }
+
+    private void update_batch_value(OrderLineBatch b)
+            throws SQLException, IOException {
+        buildUpdateValues(b);
+        executeSqlText();
+    }
+
+    /*
+     * buildUpdateValues()
+     *
+     * The statement text of update_batch_value for a batch.
+     */
+    SqlTextBuilder buildUpdateValues(OrderLineBatch b) {
+        sqlText.reset();
+        sqlText.append("update bmsql_order_line@{no_full_scan} " +
+                "  set ol_i_id = 1234 " +
+                "  from (values ");
+        for (int i = 0; i < b.size; i++) {
+            sqlText.beginRow();
+            appendOrderLineKey(sqlText, b, i);
+            sqlText.endRow();
+        }
+        sqlText.append("  ) as data(d1,d2,d3,d4) where ol_o_id =data.d1 and  ol_d_id = data.d2 and " +
+                "ol_w_id = data.d3 and ol_number =data.d4");
+        return sqlText;
+    }
+
+    private void update_batch_value_list(OrderLineBatch b)
+            throws SQLException, IOException {
+        sqlText.reset();
+        sqlText.append("update bmsql_order_line@{no_full_scan} " +
+                "  set ol_i_id = 1 " +
+                "  from (values ");
+        for (int i = 0; i < b.size; i++) {
+            sqlText.beginRow();
+            sqlText.appendInt(b.wId[i] % 12);
+            appendOrderLineKey(sqlText, b, i);
+            sqlText.endRow();
+        }
+        sqlText.append("  ) as data(d0,d1,d2,d3,d4) where bmsql_o_l = data.d0 and  ol_o_id =data.d1 and  ol_d_id = data.d2 and " +
+                "ol_w_id = data.d3 and ol_number =data.d4");
+        executeSqlText();
+    }
+
+    private void delete_batch_value(OrderLineBatch b)
+            throws SQLException, IOException {
+        sqlText.reset();
+        sqlText.append("delete from bmsql_order_line@{no_full_scan} " +
+                "  where (ol_o_id,ol_d_id,ol_w_id,ol_number) in ( ");
+        for (int i = 0; i < b.size; i++) {
+            sqlText.beginRow();
+            appendOrderLineKey(sqlText, b, i);
+            sqlText.endRow();
+        }
+        sqlText.append(")");
+        executeSqlText();
+    }
+
+    /*
+     * insertValues()
+     *
+     * Insert a batch as one multi-row INSERT/UPSERT statement with a
+     * literal VALUES list, in its own transaction.
+     */
+    private void insertValues(String head, OrderLineBatch b)
+            throws SQLException, IOException {
+        buildInsertValues(head, b);
+        executeSqlText();
+    }
+
+    SqlTextBuilder buildInsertValues(String head, OrderLineBatch b) {
+        sqlText.reset();
+        sqlText.append(head);
+        for (int i = 0; i < b.size; i++) {
+            sqlText.beginRow();
+            appendOrderLine(sqlText, b, i);
+            sqlText.endRow();
+        }
+        return sqlText;
+    }
+
+    private void executeSqlText()
+            throws SQLException {
+        if (stmtSqlText == null)
+            stmtSqlText = dbConn.createStatement();
+        timedExecute(stmtSqlText, sqlText.toString());
+        commit();
+    }
+
+    /*
+     * insertBatch()
+     *
+     * Insert a batch through a prepared INSERT/UPSERT with all ten
+     * columns as one JDBC batch, in its own transaction.
+     */
+    private void insertBatch(PreparedStatement stmt, OrderLineBatch b)
+            throws SQLException, IOException {
+        for (int i = 0; i < b.size; i++) {
+            bindOrderLine(stmt, b, i);
+            stmt.addBatch();
+        }
+        timedExecuteBatch(stmt);
+        stmt.clearBatch();
+        commit();
+    }
+
+    /*
+     * insertParams()
+     *
+     * Insert a batch as multi-row INSERT/UPSERT statements with bind
+     * parameters. A batch that exceeds the protocol's parameter limit
+     * is sent as several statements in the same transaction.
+     */
+    private void insertParams(MultiRowStatementCache cache, OrderLineBatch b)
+            throws SQLException, IOException {
+        int per = cache.paramsPerRow();
+        for (int start = 0; start < b.size; start += cache.maxRows()) {
+            int n = Math.min(cache.maxRows(), b.size - start);
+            PreparedStatement stmt = cache.get(n);
+            for (int i = 0; i < n; i++)
+                bindOrderLine(stmt, i * per + 1, b, start + i);
+            timedExecuteUpdate(stmt);
+        }
+        commit();
+    }
+
+    /*
+     * updateParams()
+     *
+     * The bind parameter version of update_batch_value.
+     */
+    private void updateParams(MultiRowStatementCache cache, OrderLineBatch b)
+            throws SQLException, IOException {
+        int per = cache.paramsPerRow();
+        for (int start = 0; start < b.size; start += cache.maxRows()) {
+            int n = Math.min(cache.maxRows(), b.size - start);
+            PreparedStatement stmt = cache.get(n);
+            for (int i = 0; i < n; i++)
+                bindOrderLineKey(stmt, i * per + 1, b, start + i);
+            timedExecuteUpdate(stmt);
+        }
+        commit();
+    }
+
+    /*
+     * update_batch_array()
+     *
+     * Like Update_batch, but the batch is a single UPDATE ... FROM
+     * unnest() with one int[] array per column. The SQL text does not
+     * depend on the batch size.
+     */
+    private void update_batch_array(OrderLineBatch b)
+            throws SQLException, IOException {
+        PGConnection pgConn = dbConn.unwrap(PGConnection.class);
+        bindOrderLineKeyArrays(stmtUpdateArrayOrderLine, pgConn, b);
+        stmtUpdateArrayOrderLine.setArray(5,
+                pgConn.createArrayOf("int4", b.exact(b.iId)));
+        timedExecuteUpdate(stmtUpdateArrayOrderLine);
+        commit();
+    }
+
+    /*
+     * delete_batch_array()
+     *
+     * Like delete_batch, with one DELETE ... IN (unnest()) per batch.
+     */
+    private void delete_batch_array(OrderLineBatch b)
+            throws SQLException, IOException {
+        PGConnection pgConn = dbConn.unwrap(PGConnection.class);
+        bindOrderLineKeyArrays(stmtDeleteArrayOrderLine, pgConn, b);
+        timedExecuteUpdate(stmtDeleteArrayOrderLine);
+        commit();
+    }
+
+    /*
+     * upsert_batch_array()
+     *
+     * Like upsert, with one UPSERT ... SELECT FROM unnest() per batch
+     * and all ten columns bound as arrays.
+     */
+    private void upsert_batch_array(OrderLineBatch b)
+            throws SQLException, IOException {
+        PGConnection pgConn = dbConn.unwrap(PGConnection.class);
+        PreparedStatement stmt = stmtUpsertArrayOrderLine;
+
+        if (deliveryTsArray.length != b.size) {
+            deliveryTsArray = new java.sql.Timestamp[b.size];
+            for (int i = 0; i < b.size; i++)
+                deliveryTsArray[i] = new java.sql.Timestamp(0);
+        }
+        if (deliveryParam.length != b.size) {
+            deliveryParam = new java.sql.Timestamp[b.size];
+            amountParam = new double[b.size];
+            distInfoParam = new String[b.size];
+        }
+        java.sql.Timestamp[] delivery = deliveryParam;
+        double[] amount = amountParam;
+        String[] distInfo = distInfoParam;
+        for (int i = 0; i < b.size; i++) {
+            if (b.isDelivered(i)) {
+                deliveryTsArray[i].setTime(b.deliveryMillis[i]);
+                delivery[i] = deliveryTsArray[i];
+            } else {
+                delivery[i] = null;
+            }
+            amount[i] = b.amount(i);
+            // the driver needs String elements for a varchar array
+            distInfo[i] = b.distInfoString(i);
+        }
+
+        bindOrderLineKeyArrays(stmt, pgConn, b);
+        stmt.setArray(5, pgConn.createArrayOf("int4", b.exact(b.iId)));
+        stmt.setArray(6, pgConn.createArrayOf("int4", b.exact(b.supplyWId)));
+        stmt.setArray(7, dbConn.createArrayOf("timestamp", delivery));
+        stmt.setArray(8, pgConn.createArrayOf("int4", b.exact(b.quantity)));
+        stmt.setArray(9, pgConn.createArrayOf("float8", amount));
+        stmt.setArray(10, pgConn.createArrayOf("varchar", distInfo));
+        timedExecuteUpdate(stmt);
+        commit();
+    }
+
+    /*
+     * copyBatch()
+     *
+     * Load a batch through one COPY FROM STDIN. The rows are encoded
+     * straight into the COPY stream by the given text or binary encoder.
+     */
+    private void copyBatch(OrderLineBatch b, PGCopyEncoder enc,
+                           String copySql)
+            throws SQLException, IOException {
+        long start = System.nanoTime();
+        PGCopyOutputStream copyOut = new PGCopyOutputStream(
+                dbConn.unwrap(PGConnection.class), copySql, COPY_BUFFER_SIZE);
+
+        enc.beginCopy();
+        for (int i = 0; i < b.size; i++) {
+            b.encodeRow(enc, i);
+            if (enc.size() >= COPY_BUFFER_SIZE)
+                enc.writeTo(copyOut);
+        }
+        enc.endCopy();
+        enc.writeTo(copyOut);
+        copyOut.endCopy();
+        timed(OP_EXECUTE, start);
+        counters.statements.increment();
+        commit();
+    }
+
+    private void loadWarehouse(OrderLineBatch b)
+            throws SQLException, IOException {
+        /*
+         * Create the ORDER_LINE rows for this ORDER.
+         */
+        if (writeCSV) {
+            formatOrderLines(b);
+        } else {
+            bindOrderLines(b);
+            timedExecuteBatch(stmtOrderLine);
+            stmtOrderLine.clearBatch();
+            commit();
+        }
+    }
+
+    /*
+     * formatOrderLines()
+     *
+     * Encode the CSV lines of a batch into csvText and return it. The
+     * buffer goes to the file when it is full or the rows switch to
+     * another file, always on a row boundary.
+     */
+    PGCopyTextEncoder formatOrderLines(OrderLineBatch b)
+            throws IOException {
+        for (int i = 0; i < b.size; i++) {
+            if (csvOut != null) {
+                int slot = csvOut.slot(worker, b.wId[i]);
+
+                if (slot != csvSlot || csvText.size() >= csvOut.blockSize()) {
+                    flushCSV();
+                    csvSlot = slot;
+                    csvOut.setSlot(slot);
+                }
+            }
+            b.encodeCSVRow(csvText, i);
+        }
+        return csvText;
+    }
+
+    /*
+     * flushCSV()
+     *
+     * Write what is left in csvText to the current file.
+     */
+    private void flushCSV()
+            throws IOException {
+        if (csvOut != null)
+            csvText.writeTo(csvOut);
+    }
+
+    /*
+     * bindOrderLines()
+     *
+     * Bind all rows of a batch to stmtOrderLine as one JDBC batch.
+     */
+    void bindOrderLines(OrderLineBatch b)
+            throws SQLException {
+        for (int i = 0; i < b.size; i++) {
+            bindOrderLine(stmtOrderLine, b, i);
+            stmtOrderLine.addBatch();
+        }
+    }
+
+    /*
+     * timed(op, start)
+     *
+     * Record the latency of one call that started at start, as taken
+     * from System.nanoTime(). The timedXxx() wrappers below do it for
+     * the JDBC calls of the load modes.
+     */
+    private void timed(int op, long start) {
+        latency[op].record((System.nanoTime() - start) / 1000);
+    }
+
+    private void timedExecuteBatch(Statement stmt)
+            throws SQLException {
+        long start = System.nanoTime();
+        try {
+            counters.statements.add(stmt.executeBatch().length);
+        } catch (SQLException se) {
+            stmt.clearBatch();
+            throw se;
+        }
+        timed(OP_EXECUTE_BATCH, start);
+    }
+
+    private void timedExecuteUpdate(PreparedStatement stmt)
+            throws SQLException {
+        long start = System.nanoTime();
+        stmt.executeUpdate();
+        timed(OP_EXECUTE, start);
+        counters.statements.increment();
+    }
+
+    private void timedExecute(PreparedStatement stmt)
+            throws SQLException {
+        long start = System.nanoTime();
+        stmt.execute();
+        timed(OP_EXECUTE, start);
+        counters.statements.increment();
+    }
+
+    private void timedExecute(Statement stmt, String sql)
+            throws SQLException {
+        long start = System.nanoTime();
+        stmt.execute(sql);
+        timed(OP_EXECUTE, start);
+        counters.statements.increment();
+    }
+
+    private void commit()
+            throws SQLException {
+        long start = System.nanoTime();
+        dbConn.commit();
+        long nanos = System.nanoTime() - start;
+        latency[OP_COMMIT].record(nanos / 1000);
+        counters.commits.increment();
+        counters.commitNanos.add(nanos);
+    }
+
+    /*
+     * bindOrderLine()
+     *
+     * Bind all ten columns of batch row i in bmsql_order_line column
+     * order, starting at parameter index first. The Timestamp is reused;
+     * the driver converts it on bind.
+     */
+    private void bindOrderLine(PreparedStatement stmt, OrderLineBatch b, int i)
+            throws SQLException {
+        bindOrderLine(stmt, 1, b, i);
+    }
+
+    private void bindOrderLine(PreparedStatement stmt, int first,
+                               OrderLineBatch b, int i)
+            throws SQLException {
+        stmt.setInt(first, b.oId[i]);
+        stmt.setInt(first + 1, b.dId[i]);
+        stmt.setInt(first + 2, b.wId[i]);
+        stmt.setInt(first + 3, b.number[i]);
+        stmt.setInt(first + 4, b.iId[i]);
+        stmt.setInt(first + 5, b.supplyWId[i]);
+        if (b.isDelivered(i)) {
+            deliveryTs.setTime(b.deliveryMillis[i]);
+            stmt.setTimestamp(first + 6, deliveryTs);
+        } else {
+            stmt.setNull(first + 6, java.sql.Types.TIMESTAMP);
+        }
+        stmt.setInt(first + 7, b.quantity[i]);
+        stmt.setDouble(first + 8, b.amount(i));
+        stmt.setString(first + 9, b.distInfoString(i));
+    }
+
+    /*
+     * bindOrderLineKey()
+     *
+     * Bind the four primary key columns of batch row i, starting at
+     * parameter index first.
+     */
+    private static void bindOrderLineKey(PreparedStatement stmt, int first,
+                                         OrderLineBatch b, int i)
+            throws SQLException {
+        stmt.setInt(first, b.oId[i]);
+        stmt.setInt(first + 1, b.dId[i]);
+        stmt.setInt(first + 2, b.wId[i]);
+        stmt.setInt(first + 3, b.number[i]);
+    }
+
+    /*
+     * appendOrderLine()
+     *
+     * Append all ten columns of batch row i as SQL literals.
+     */
+    private static void appendOrderLine(SqlTextBuilder sql, OrderLineBatch b,
+                                        int i) {
+        sql.appendInt(b.oId[i]);
+        sql.appendInt(b.dId[i]);
+        sql.appendInt(b.wId[i]);
+        sql.appendInt(b.number[i]);
+        sql.appendInt(b.iId[i]);
+        sql.appendInt(b.supplyWId[i]);
+        if (b.isDelivered(i))
+            sql.appendTimestamp(b.deliveryMillis[i]);
+        else
+            sql.appendNull();
+        sql.appendInt(b.quantity[i]);
+        sql.appendNumeric(b.amountCents[i]);
+        sql.appendBytes(b.distInfo, i * OrderLineBatch.DIST_INFO_LEN,
+                OrderLineBatch.DIST_INFO_LEN);
+    }
+
+    private static void appendOrderLineKey(SqlTextBuilder sql,
+                                           OrderLineBatch b, int i) {
+        sql.appendInt(b.oId[i]);
+        sql.appendInt(b.dId[i]);
+        sql.appendInt(b.wId[i]);
+        sql.appendInt(b.number[i]);
+    }
+
+    /*
+     * bindOrderLineKeyArrays()
+     *
+     * Bind the four primary key columns of the whole batch as int[]
+     * arrays to parameters 1 to 4.
+     */
+    private static void bindOrderLineKeyArrays(PreparedStatement stmt,
+                                               PGConnection pgConn,
+                                               OrderLineBatch b)
+            throws SQLException {
+        stmt.setArray(1, pgConn.createArrayOf("int4", b.exact(b.oId)));
+        stmt.setArray(2, pgConn.createArrayOf("int4", b.exact(b.dId)));
+        stmt.setArray(3, pgConn.createArrayOf("int4", b.exact(b.wId)));
+        stmt.setArray(4, pgConn.createArrayOf("int4", b.exact(b.number)));
+    }
+
+    private static void bindUpdateOrderLine(PreparedStatement stmt,
+                                            OrderLineBatch b, int i)
+            throws SQLException {
+        stmt.setInt(1, b.iId[i]);
+        bindOrderLineKey(stmt, 2, b, i);
+    }
+}
+
+
+/*
+ * PgStandInServer
+ *
+ *     In-process stand-in for the database that speaks enough of the
+ *     PostgreSQL v3 protocol for the bundled driver: startup without
+ *     authentication, simple query, Parse/Bind/Describe/Execute/Sync,
+ *     COPY FROM STDIN and transaction control. Rows are counted and
+ *     discarded. Every statement and every commit can be delayed by a
+ *     fixed number of microseconds, so the loader's own ceiling and the
+ *     effect of batching and pipelining can be measured without a
+ *     cluster.
+ */
+class PgStandInServer implements Runnable
+{
+    private ServerSocket        listener;
+    private long                statementDelayNanos;
+    private long                commitDelayNanos;
+    private volatile boolean    stopped = false;
+    private AtomicInteger       nextPid = new AtomicInteger(1);
+
+    public final LongAdder      connections = new LongAdder();
+    public final LongAdder      statements = new LongAdder();
+    public final LongAdder      rows = new LongAdder();
+    public final LongAdder      commits = new LongAdder();
+    public final LongAdder      copyRows = new LongAdder();
+
+    PgStandInServer(int port, int statementDelayMicros, int commitDelayMicros)
+            throws IOException
+    {
+        this.listener = new ServerSocket(port, 1024,
+                InetAddress.getLoopbackAddress());
+        this.statementDelayNanos = statementDelayMicros * 1000L;
+        this.commitDelayNanos = commitDelayMicros * 1000L;
+    }
+
+    public int getPort()
+    {
+        return listener.getLocalPort();
+    }
+
+    public void run()
+    {
+        while (!stopped)
+        {
+            try
+            {
+                final Socket    sock = listener.accept();
+                Thread          t;
+
+                sock.setTcpNoDelay(true);
+                connections.increment();
+                t = new Thread(new Runnable()
+                {
+                    public void run()
+                    {
+                        new PgStandInSession(PgStandInServer.this, sock,
+                                nextPid.getAndIncrement()).run();
+                    }
+                }, "standin-" + sock.getPort());
+                t.setDaemon(true);
+                t.start();
+            }
+            catch (IOException ie)
+            {
+                if (!stopped)
+                    System.err.println("ERROR: stand-in server - " +
+                            ie.getMessage());
+            }
+        }
+    }
+
+    public void stop()
+    {
+        stopped = true;
+        try
+        {
+            listener.close();
+        }
+        catch (IOException ie)
+        {
+            // nothing to do
+        }
+    }
+
+    public void report()
+    {
+        System.out.printf("Stand-in server: connections %d statements %d " +
+                        "rows %d copy rows %d commits %d%n",
+                connections.sum(), statements.sum(), rows.sum(),
+                copyRows.sum(), commits.sum());
+    }
+
+    /*
+     * delay(nanos)
+     *
+     *     Busy-free wait of the given length. Sleep granularity would
+     *     make small latencies a millisecond long.
+     */
+    public static void delay(long nanos)
+    {
+        long    until = System.nanoTime() + nanos;
+        long    left;
+
+        while ((left = until - System.nanoTime()) > 0)
+            LockSupport.parkNanos(left);
+    }
+
+    public long statementDelayNanos()
+    {
+        return statementDelayNanos;
+    }
+
+    public long commitDelayNanos()
+    {
+        return commitDelayNanos;
+    }
+} // end PgStandInServer
+
+
+/*
+ * PgStandInSession
+ *
+ *     One client connection of the stand-in server.
+ */
+class PgStandInSession
+{
+    private static final int    SSL_REQUEST = 80877103;
+    private static final int    GSS_REQUEST = 80877104;
+    private static final int    CANCEL_REQUEST = 80877102;
+    private static final int    PROTOCOL_3 = 196608;
+
+    private static final int    OID_INT4 = 23;
+    private static final int    OID_TEXT = 25;
+
+    private PgStandInServer     server;
+    private Socket              sock;
+    private int                 pid;
+    private DataInputStream     in;
+    private OutputStream        out;
+    private byte[]              msg = new byte[8192];
+    private byte[]              body = new byte[8192];
+    private int                 msgLen;
+    private int                 pos;
+    private char                txStatus = 'I';
+    private boolean             skipToSync = false;
+
+    /*
+     * Prepared statements and portals by name. A portal is kept as the
+     * statement text plus the number of rows its parameters carry.
+     */
+    private HashMap<String, String>     statements = new HashMap<String, String>();
+    private HashMap<String, int[]>      paramTypes = new HashMap<String, int[]>();
+    private HashMap<String, String>     portals = new HashMap<String, String>();
+    private HashMap<String, Long>       portalRows = new HashMap<String, Long>();
+
+    PgStandInSession(PgStandInServer server, Socket sock, int pid)
+    {
+        this.server = server;
+        this.sock = sock;
+        this.pid = pid;
+    }
+
+    public void run()
+    {
+        try
+        {
+            in = new DataInputStream(new BufferedInputStream(
+                    sock.getInputStream(), 65536));
+            out = new BufferedOutputStream(sock.getOutputStream(), 65536);
+            if (!startup())
+                return;
+            for (;;)
+            {
+                int     type = in.read();
+
+                if (type < 0 || type == 'X')
+                    break;
+                readBody(in.readInt() - 4);
+                if (skipToSync && type != 'S')
+                    continue;
+                switch (type)
+                {
+                    case 'Q': simpleQuery(); break;
+                    case 'P': parse(); break;
+                    case 'B': bind(); break;
+                    case 'D': describe(); break;
+                    case 'E': execute(); break;
+                    case 'C': close(); break;
+                    case 'H': out.flush(); break;
+                    case 'S':
+                        skipToSync = false;
+                        readyForQuery();
+                        break;
+                    case 'd':
+                    case 'c':
+                    case 'f':
+                        break;      // stray COPY data after an error
+                    default:
+                        error("0A000", "message type '" + (char)type +
+                                "' not supported by the stand-in server");
+                        skipToSync = true;
+                        break;
+                }
+            }
+        }
+        catch (IOException ie)
+        {
+            // client went away
+        }
+        finally
+        {
+            try
+            {
+                sock.close();
+            }
+            catch (IOException ie)
+            {
+                // nothing to do
+            }
+        }
+    }
+
+    /*
+     * startup()
+     *
+     *     Decline SSL and GSS encryption, accept any user without a
+     *     password and report the parameters the driver checks.
+     */
+    private boolean startup()
+            throws IOException
+    {
+        for (;;)
+        {
+            int     len = in.readInt();
+            int     code = in.readInt();
+
+            readBody(len - 8);
+            if (code == SSL_REQUEST || code == GSS_REQUEST)
+            {
+                out.write('N');
+                out.flush();
+                continue;
+            }
+            if (code != PROTOCOL_3)
+                return false;
+            break;
+        }
+
+        begin('R');
+        putInt(0);
+        end();
+        parameterStatus("server_version", "13.0.0");
+        parameterStatus("server_encoding", "UTF8");
+        parameterStatus("client_encoding", "UTF8");
+        parameterStatus("DateStyle", "ISO, MDY");
+        parameterStatus("TimeZone", TimeZone.getDefault().getID());
+        parameterStatus("integer_datetimes", "on");
+        parameterStatus("standard_conforming_strings", "on");
+        parameterStatus("is_superuser", "on");
+        parameterStatus("application_name", "");
+        begin('K');
+        putInt(pid);
+        putInt(pid * 7919);
+        end();
+        readyForQuery();
+        return true;
+    }
+
+    /*
+     * simpleQuery()
+     *
+     *     Q message, possibly with several statements. COPY FROM STDIN
+     *     switches to reading CopyData until CopyDone.
+     */
+    private void simpleQuery()
+            throws IOException
+    {
+        String  sql = getString();
+
+        for (String stmt : splitStatements(sql))
+        {
+            if (stmt.trim().length() == 0)
+                continue;
+            if (keyword(stmt).equals("COPY"))
+            {
+                copyIn(stmt);
+                continue;
+            }
+            if (isSelect(stmt))
+                rowDescription();
+            complete(stmt, countRows(stmt, -1));
+        }
+        if (sql.trim().length() == 0)
+        {
+            begin('I');
+            end();
+        }
+        readyForQuery();
+    }
+
+    private void parse()
+            throws IOException
+    {
+        String  name = getString();
+        String  sql = getString();
+        int     n = getShort();
+        int[]   types = new int[n];
+
+        for (int i = 0; i < n; i++)
+            types[i] = getInt();
+        statements.put(name, sql);
+        paramTypes.put(name, types);
+        begin('1');
+        end();
+    }
 
-    private PreparedStatement stmtOrderLine = null;
-    private PreparedStatement stmtUpdateOrderLine = null;
-    private PreparedStatement stmtInsertUpdateOrderLine = null;
-    private PreparedStatement stmtInsertUpdateBucketOrderLine = null;
-    private PreparedStatement stmtUpsertBucketOrderLine = null;
-    private PreparedStatement stmtDeleteOrderLine = null;
+    /*
+     * bind()
+     *
+     *     Only the first parameter is looked at: if it is an array, its
+     *     length is the number of rows the statement writes.
+     */
+    private void bind()
+            throws IOException
+    {
+        String  portal = getString();
+        String  name = getString();
+        int     nFormats = getShort();
+        int[]   formats = new int[nFormats];
+        int     nParams;
+        long    arrayRows = -1;
 
-    private StringBuffer sbConfig = null;
-    private Formatter fmtConfig = null;
-    private StringBuffer sbItem = null;
-    private Formatter fmtItem = null;
-    private StringBuffer sbWarehouse = null;
-    private Formatter fmtWarehouse = null;
-    private StringBuffer sbDistrict = null;
-    private Formatter fmtDistrict = null;
-    private StringBuffer sbStock = null;
-    private Formatter fmtStock = null;
-    private StringBuffer sbCustomer = null;
-    private Formatter fmtCustomer = null;
-    private StringBuffer sbHistory = null;
-    private Formatter fmtHistory = null;
-    private StringBuffer sbOrder = null;
-    private Formatter fmtOrder = null;
-    private StringBuffer sbOrderLine = null;
-    private Formatter fmtOrderLine = null;
-    private StringBuffer sbNewOrder = null;
-    private Formatter fmtNewOrder = null;
+        for (int i = 0; i < nFormats; i++)
+            formats[i] = getShort();
+        nParams = getShort();
+        for (int i = 0; i < nParams; i++)
+        {
+            int     len = getInt();
+            int     format = (nFormats == 0) ? 0 :
+                    formats[(nFormats == 1) ? 0 : i];
 
-    LoadDataWorker(int worker, String csvNull, jTPCCRandom rnd,String flag) {
-        this.worker = worker;
-        this.csvNull = csvNull;
-        this.rnd = rnd;
-        this.flag = flag;
+            if (i == 0 && len > 0)
+                arrayRows = arrayLength(format, pos, len);
+            if (len > 0)
+                pos += len;
+        }
 
-        this.sb = new StringBuffer();
-        this.fmt = new Formatter(sb);
-        this.writeCSV = true;
+        portals.put(portal, statements.get(name));
+        portalRows.put(portal, arrayRows);
+        begin('2');
+        end();
+    }
 
-        this.sbConfig = new StringBuffer();
-        this.fmtConfig = new Formatter(sbConfig);
-        this.sbItem = new StringBuffer();
-        this.fmtItem = new Formatter(sbItem);
-        this.sbWarehouse = new StringBuffer();
-        this.fmtWarehouse = new Formatter(sbWarehouse);
-        this.sbDistrict = new StringBuffer();
-        this.fmtDistrict = new Formatter(sbDistrict);
-        this.sbStock = new StringBuffer();
-        this.fmtStock = new Formatter(sbStock);
-        this.sbCustomer = new StringBuffer();
-        this.fmtCustomer = new Formatter(sbCustomer);
-        this.sbHistory = new StringBuffer();
-        this.fmtHistory = new Formatter(sbHistory);
-        this.sbOrder = new StringBuffer();
-        this.fmtOrder = new Formatter(sbOrder);
-        this.sbOrderLine = new StringBuffer();
-        this.fmtOrderLine = new Formatter(sbOrderLine);
-        this.sbNewOrder = new StringBuffer();
-        this.fmtNewOrder = new Formatter(sbNewOrder);
+    private void describe()
+            throws IOException
+    {
+        char    what = (char)body[pos++];
+        String  name = getString();
+        String  sql = (what == 'S') ? statements.get(name) : portals.get(name);
+
+        if (sql == null)
+            sql = "";
+        if (what == 'S')
+        {
+            int[]   types = paramTypes.get(name);
+            int     n = Math.max((types == null) ? 0 : types.length,
+                    countPlaceholders(sql));
+
+            begin('t');
+            putShort(n);
+            for (int i = 0; i < n; i++)
+                putInt((types != null && i < types.length && types[i] != 0) ?
+                        types[i] : OID_TEXT);
+            end();
+        }
+        if (isSelect(sql))
+            rowDescription();
+        else
+        {
+            begin('n');
+            end();
+        }
     }
 
-    LoadDataWorker(int worker, Connection dbConn, jTPCCRandom rnd,String flag,int commitbatch)
-            throws SQLException {
-        this.worker = worker;
-        this.dbConn = dbConn;
-        this.rnd = rnd;
-        this.flag = flag;
-        this.commitbatch = commitbatch;
+    private void execute()
+            throws IOException
+    {
+        String  portal = getString();
+        String  sql = portals.get(portal);
+        Long    arrayRows = portalRows.get(portal);
 
-        this.sb = new StringBuffer();
-        this.fmt = new Formatter(sb);
+        if (sql == null)
+        {
+            error("34000", "portal \"" + portal + "\" does not exist");
+            skipToSync = true;
+            return;
+        }
+        complete(sql, countRows(sql, (arrayRows == null) ? -1 : arrayRows));
+    }
 
-        stmtOrderLine = dbConn.prepareStatement(
-                "INSERT INTO bmsql_order_line (" +
-                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
-                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
-                        "  ol_amount, ol_dist_info) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
-        );
-        stmtUpdateOrderLine = dbConn.prepareStatement(
-                "update bmsql_order_line " +
-                        "  set ol_i_id = ? " +
-                        "  where ol_o_id =? and  ol_d_id = ? and " +
-                        "ol_w_id = ? and ol_number =?"
-        );
+    private void close()
+            throws IOException
+    {
+        char    what = (char)body[pos++];
+        String  name = getString();
 
-        stmtDeleteOrderLine = dbConn.prepareStatement(
-                "delete from  bmsql_order_line " +
-                        "  where ol_o_id =? and  ol_d_id = ? and " +
-                        "ol_w_id = ? and ol_number =?"
-        );
-//        stmtInsertUpdateOrderLine = dbConn.prepareStatement(
-//                "INSERT INTO bmsql_order_line (" +
-//                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
-//                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
-//                        "  ol_amount, ol_dist_info) " +
-//                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-//                        "ON CONFLICT (ol_o_id, ol_d_id, ol_w_id, ol_number) DO UPDATE SET ol_i_id = excluded.ol_i_id"
-//        );
-        stmtInsertUpdateOrderLine = dbConn.prepareStatement(
-                "INSERT INTO bmsql_order_line (" +
-                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
-                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
-                        "  ol_amount, ol_dist_info) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                        "ON CONFLICT (bmsql_o_l,ol_o_id, ol_d_id, ol_w_id, ol_number) DO UPDATE SET ol_i_id = excluded.ol_i_id"
-        );
+        if (what == 'S')
+        {
+            statements.remove(name);
+            paramTypes.remove(name);
+        }
+        else
+        {
+            portals.remove(name);
+            portalRows.remove(name);
+        }
+        begin('3');
+        end();
+    }
 
-        stmtInsertUpdateBucketOrderLine = dbConn.prepareStatement(
-                "INSERT INTO bmsql_order_line@{no_full_scan} (" +
-                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
-                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
-                        "  ol_amount, ol_dist_info) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
-                        "ON CONFLICT (dbms_internal_ol_d_id_ol_number_ol_o_id_ol_w_id_shard_12,ol_o_id, ol_d_id, ol_w_id, ol_number) DO UPDATE SET ol_i_id = excluded.ol_i_id"
-        );
-        stmtUpsertBucketOrderLine = dbConn.prepareStatement(
-                "upsert INTO bmsql_order_line@{no_full_scan} (" +
-                        "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
-                        "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
-                        "  ol_amount, ol_dist_info) " +
-                        "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?) "
-        );
+    /*
+     * copyIn(sql)
+     *
+     *     Accept a COPY FROM STDIN and count the rows of the text or
+     *     binary stream as it arrives.
+     */
+    private void copyIn(String sql)
+            throws IOException
+    {
+        boolean         binary = sql.toUpperCase().contains("BINARY");
+        CopyRowCounter  counter = new CopyRowCounter(binary);
+
+        begin('G');
+        putByte(binary ? 1 : 0);
+        putShort(0);
+        end();
+        out.flush();
+
+        for (;;)
+        {
+            int     type = in.read();
+
+            if (type < 0)
+                throw new EOFException();
+            readBody(in.readInt() - 4);
+            if (type == 'd')
+                counter.add(body, 0, msgLen);
+            else if (type == 'c')
+                break;
+            else if (type == 'f')
+            {
+                error("57014", "COPY from stdin failed: " + getString());
+                return;
+            }
+            else if (type == 'H' || type == 'S')
+                continue;
+        }
+        server.copyRows.add(counter.rows());
+        complete(sql, counter.rows());
     }
 
     /*
-     * run()
+     * complete(sql, rows)
+     *
+     *     Apply the injected latency, keep the transaction state and
+     *     send the command tag (and the one row of a SELECT).
      */
-    public void run() {
-        int job;
+    private void complete(String sql, long rows)
+            throws IOException
+    {
+        String  kw = keyword(sql);
+        String  tag;
 
-        try {
-            while ((job = Main.getNextJob()) >= 0) {
-                if (job == 0) {
-                    continue;
+        switch (kw)
+        {
+            case "BEGIN":
+            case "START":
+                txStatus = 'T';
+                tag = "BEGIN";
+                break;
+            case "COMMIT":
+            case "END":
+                if (server.commitDelayNanos() > 0)
+                    PgStandInServer.delay(server.commitDelayNanos());
+                server.commits.increment();
+                txStatus = 'I';
+                tag = "COMMIT";
+                break;
+            case "ROLLBACK":
+            case "ABORT":
+                txStatus = 'I';
+                tag = "ROLLBACK";
+                break;
+            default:
+                if (server.statementDelayNanos() > 0)
+                    PgStandInServer.delay(server.statementDelayNanos());
+                server.statements.increment();
+                if (kw.equals("INSERT") || kw.equals("UPSERT"))
+                    tag = "INSERT 0 " + rows;
+                else if (kw.equals("UPDATE") || kw.equals("DELETE") ||
+                        kw.equals("COPY"))
+                    tag = kw + " " + rows;
+                else if (isSelect(sql))
+                {
+                    begin('D');
+                    putShort(1);
+                    putInt(1);
+                    putByte('1');
+                    end();
+                    tag = "SELECT 1";
+                    rows = 0;
                 }
-                if (flag.toLowerCase().equals("insert")) {
-                    fmt.format("Worker %03d: Loading Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    loadWarehouse(job);
-                    fmt.format("Worker %03d: Loading Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                } else if (flag.toLowerCase().equals("update")) {
-                    fmt.format("Worker %03d: Updating Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    Update(job);
-                    fmt.format("Worker %03d: Updating Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                } else if (flag.toLowerCase().equals("update_batch")) {
-                    fmt.format("Worker %03d: Updating Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    Update_batch(job,commitbatch);
-                    fmt.format("Worker %03d: Updating Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                }else if (flag.toLowerCase().equals("delete_batch")) {
-                    fmt.format("Worker %03d: deleting Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    delete_batch(job,commitbatch);
-                    fmt.format("Worker %03d: deleting Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                }else if (flag.toLowerCase().equals("insert_update")) {
-                    fmt.format("Worker %03d: Insert_updating Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    InsertUpdate(job,commitbatch);
-                    fmt.format("Worker %03d: Insert_updating Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                }else if (flag.toLowerCase().equals("insert_update_bucket")) {
-                    fmt.format("Worker %03d: Insert_updating 1234567 Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    InsertUpdateBucket(job,commitbatch);
-                    fmt.format("Worker %03d: Insert_updating 1234567 Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                }else if (flag.toLowerCase().equals("update_batch_value")) {
-                    fmt.format("Worker %03d: Insert_updating 1234 Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    update_batch_value(job, commitbatch);
-                    fmt.format("Worker %03d: Insert_updating 1234 Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                }else if (flag.toLowerCase().equals("delete_batch_value")) {
-                    fmt.format("Worker %03d: Delete_valuing Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    delete_batch_value(job, commitbatch);
-                    fmt.format("Worker %03d: Delete_valuing Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                }else if (flag.toLowerCase().equals("insert_batch_value")) {
-                    fmt.format("Worker %03d: Inserting Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    insert_batch_value(job, commitbatch);
-                    fmt.format("Worker %03d: Inserting Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                }else if (flag.toLowerCase().equals("upsert")) {
-                    fmt.format("Worker %03d: Upserting  12345678 Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    UpsertWarehouse(job, commitbatch);
-                    fmt.format("Worker %03d: Upserting 12345678 Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                }else if (flag.toLowerCase().equals("upsert_batch_value")) {
-                    fmt.format("Worker %03d: Upserting batch value 123 Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    upsert_batch_value(job, commitbatch);
-                    fmt.format("Worker %03d: Upserting batch value 123 Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                }else if (flag.toLowerCase().equals("update_batch_value_list")) {
-                    fmt.format("Worker %03d: Upserting batch value list 1234 Warehouse %6d",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
-                    update_batch_value_list(job, commitbatch);
-                    fmt.format("Worker %03d: Upserting batch value list 1234 Warehouse %6d done",
-                            worker, job);
-                    System.out.println(sb.toString());
-                    sb.setLength(0);
+                else
+                {
+                    tag = kw;
+                    rows = 0;
                 }
+                if (!kw.equals("COPY"))
+                    server.rows.add(rows);
+                break;
+        }
+        begin('C');
+        putString(tag);
+        end();
+    }
+
+    private void rowDescription()
+            throws IOException
+    {
+        begin('T');
+        putShort(1);
+        putString("?column?");
+        putInt(0);
+        putShort(0);
+        putInt(OID_INT4);
+        putShort(4);
+        putInt(-1);
+        putShort(0);
+        end();
+    }
+
+    private void parameterStatus(String name, String value)
+            throws IOException
+    {
+        begin('S');
+        putString(name);
+        putString(value);
+        end();
+    }
+
+    private void readyForQuery()
+            throws IOException
+    {
+        begin('Z');
+        putByte(txStatus);
+        end();
+        out.flush();
+    }
+
+    private void error(String sqlState, String message)
+            throws IOException
+    {
+        begin('E');
+        putByte('S');
+        putString("ERROR");
+        putByte('C');
+        putString(sqlState);
+        putByte('M');
+        putString(message);
+        putByte(0);
+        end();
+        if (txStatus == 'T')
+            txStatus = 'E';
+    }
+
+    /*
+     * countRows(sql, arrayRows)
+     *
+     *     Rows an INSERT/UPSERT/UPDATE/DELETE writes: the length of its
+     *     first array parameter, else the number of tuples in its VALUES
+     *     list, else the number of elements in its IN list, else one.
+     */
+    private static long countRows(String sql, long arrayRows)
+    {
+        int     at;
+
+        if (arrayRows >= 0)
+            return arrayRows;
+        if ((at = indexOfWord(sql, "VALUES")) >= 0)
+            return Math.max(1, countList(sql, at + 6, false));
+        if ((at = indexOfWord(sql, "IN")) >= 0)
+            return Math.max(1, countList(sql, at + 2, true));
+        return 1;
+    }
 
+    /*
+     * countList(sql, from, enclosed)
+     *
+     *     Elements of the list starting at from: the tuples of a VALUES
+     *     list or, if enclosed, the tuples or scalars inside the
+     *     parentheses after IN. Counting stops where the list ends, so a
+     *     following ON CONFLICT (...) or the closing parenthesis of a
+     *     FROM (VALUES ...) is not taken for another tuple.
+     */
+    private static long countList(String sql, int from, boolean enclosed)
+    {
+        int     base = enclosed ? 1 : 0;
+        int     depth = 0;
+        long    tuples = 0;
+        long    commas = 0;
+        boolean quoted = false;
+
+        for (int i = from; i < sql.length(); i++)
+        {
+            char    c = sql.charAt(i);
+
+            if (c == '\'')
+                quoted = !quoted;
+            else if (quoted)
+                continue;
+            else if (c == '(')
+            {
+                if (depth++ == base)
+                    tuples++;
+            }
+            else if (c == ')')
+            {
+                if (--depth < base)
+                    break;
+            }
+            else if (depth == base)
+            {
+                if (c == ',')
+                    commas++;
+                else if (!enclosed && !Character.isWhitespace(c))
+                    break;
             }
+        }
+        if (enclosed && tuples == 0)
+            return commas + 1;
+        return tuples;
+    }
+
+    /*
+     * arrayLength(format, off, len)
+     *
+     *     Element count of an array parameter in text ({a,b,c}) or binary
+     *     format, or -1 if the value is not an array.
+     */
+    private long arrayLength(int format, int off, int len)
+    {
+        if (format == 1)
+        {
+            int     ndim;
+            long    n = 1;
+
+            if (len < 12)
+                return -1;
+            ndim = getInt(off);
+            if (ndim < 0 || ndim > 6 || len < 12 + 8 * ndim)
+                return -1;
+            if (ndim == 0)
+                return 0;
+            for (int d = 0; d < ndim; d++)
+                n *= getInt(off + 12 + 8 * d);
+            return n;
+        }
+        if (body[off] != '{')
+            return -1;
+        if (len == 2)
+            return 0;
+
+        long    n = 1;
+        boolean quoted = false;
+
+        for (int i = off + 1; i < off + len - 1; i++)
+        {
+            if (body[i] == '"' && body[i - 1] != '\\')
+                quoted = !quoted;
+            else if (body[i] == ',' && !quoted)
+                n++;
+        }
+        return n;
+    }
+
+    private static int countPlaceholders(String sql)
+    {
+        int     max = 0;
+
+        for (int i = 0; i < sql.length(); i++)
+        {
+            if (sql.charAt(i) != '$')
+                continue;
+
+            int     n = 0;
+            int     j = i + 1;
+
+            while (j < sql.length() && Character.isDigit(sql.charAt(j)))
+                n = n * 10 + (sql.charAt(j++) - '0');
+            max = Math.max(max, n);
+        }
+        return max;
+    }
+
+    private static String keyword(String sql)
+    {
+        int     i = 0;
+        int     j;
+
+        while (i < sql.length() && (Character.isWhitespace(sql.charAt(i)) ||
+                sql.charAt(i) == '('))
+            i++;
+        j = i;
+        while (j < sql.length() && Character.isLetter(sql.charAt(j)))
+            j++;
+        return sql.substring(i, j).toUpperCase();
+    }
+
+    private static boolean isSelect(String sql)
+    {
+        String  kw = keyword(sql);
+
+        return kw.equals("SELECT") || kw.equals("SHOW") ||
+                kw.equals("VALUES");
+    }
+
+    /*
+     * indexOfWord(s, word)
+     *
+     *     Position of word in s as a whole word, ignoring case, or -1.
+     */
+    private static int indexOfWord(String s, String word)
+    {
+        for (int i = 0; i + word.length() <= s.length(); i++)
+        {
+            if (s.regionMatches(true, i, word, 0, word.length()) &&
+                    (i == 0 || !isWordChar(s.charAt(i - 1))) &&
+                    (i + word.length() == s.length() ||
+                            !isWordChar(s.charAt(i + word.length()))))
+                return i;
+        }
+        return -1;
+    }
+
+    private static boolean isWordChar(char c)
+    {
+        return Character.isLetterOrDigit(c) || c == '_';
+    }
+
+    /*
+     * splitStatements(sql)
+     *
+     *     Split a simple query at semicolons outside of quotes.
+     */
+    private static List<String> splitStatements(String sql)
+    {
+        List<String>    list = new ArrayList<String>();
+        boolean         quoted = false;
+        int             start = 0;
+
+        for (int i = 0; i < sql.length(); i++)
+        {
+            char    c = sql.charAt(i);
 
-            /*
-             * Close the DB connection if in direct DB mode.
-             */
-            if (!writeCSV)
-                dbConn.close();
-        } catch (SQLException se) {
-            while (se != null) {
-                fmt.format("Worker %03d: ERROR: %s", worker, se.getMessage());
-                System.err.println(sb.toString());
-                sb.setLength(0);
-                se = se.getNextException();
+            if (c == '\'')
+                quoted = !quoted;
+            else if (c == ';' && !quoted)
+            {
+                list.add(sql.substring(start, i));
+                start = i + 1;
             }
-        } catch (Exception e) {
-            fmt.format("Worker %03d: ERROR: %s", worker, e.getMessage());
-            System.err.println(sb.toString());
-            sb.setLength(0);
-            e.printStackTrace();
-            return;
         }
-    } // End run()
+        list.add(sql.substring(start));
+        return list;
+    }
 
     /* ----
-     * loadorderline()
-     *
-     * Load the content of the order_line table.
+     * Message buffer handling. Incoming messages are read whole into
+     * body, outgoing ones are built in msg with the length filled in by
+     * end().
      * ----
      */
-    private void Update(int w_id)
-            throws SQLException, IOException {
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-//            int o_ol_cnt = r
-//            nd.nextInt(5, 15);
-            int o_ol_cnt = 10;
+    private void readBody(int len)
+            throws IOException
+    {
+        if (len > body.length)
+            body = new byte[Math.max(len, body.length * 2)];
+        in.readFully(body, 0, len);
+        msgLen = len;
+        pos = 0;
+    }
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                stmtUpdateOrderLine.setInt(1, rnd.nextInt(1, 100000));
-                stmtUpdateOrderLine.setInt(2, o_id);
-                stmtUpdateOrderLine.setInt(3, w_id + 10);
-                stmtUpdateOrderLine.setInt(4, w_id);
-                stmtUpdateOrderLine.setInt(5, ol_number);
-                stmtUpdateOrderLine.execute();
-                dbConn.commit();
-            }
-        }
+    private int getInt()
+    {
+        int     v = getInt(pos);
+
+        pos += 4;
+        return v;
     }
-    private void Update_batch(int w_id,int commitbatch)
-            throws SQLException, IOException {
-        int i=0;
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-//            int o_ol_cnt = rnd.nextInt(5, 15);
-            int o_ol_cnt = 10;
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                stmtUpdateOrderLine.setInt(1, rnd.nextInt(1, 100000));
-                stmtUpdateOrderLine.setInt(2, o_id);
-                stmtUpdateOrderLine.setInt(3, w_id + 10);
-                stmtUpdateOrderLine.setInt(4, w_id);
-                stmtUpdateOrderLine.setInt(5, ol_number);
-                stmtUpdateOrderLine.addBatch();
-                i = i + 1;
-                if (i%commitbatch == 0){
-                    stmtUpdateOrderLine.executeBatch();
-                    stmtUpdateOrderLine.clearBatch();
-                    dbConn.commit();
-//                    System.out.println(i);
-                }
-            }
+    private int getInt(int off)
+    {
+        return ((body[off] & 0xff) << 24) | ((body[off + 1] & 0xff) << 16) |
+                ((body[off + 2] & 0xff) << 8) | (body[off + 3] & 0xff);
+    }
 
-        }
-        stmtUpdateOrderLine.executeBatch();
-        stmtUpdateOrderLine.clearBatch();
-        dbConn.commit();
+    private int getShort()
+    {
+        int     v = (short)(((body[pos] & 0xff) << 8) | (body[pos + 1] & 0xff));
+
+        pos += 2;
+        return v;
     }
 
-    private void InsertUpdate(int w_id,int commitbatch)
-            throws SQLException, IOException {
-        int i=0;
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-            int o_ol_cnt = 10;
+    private String getString()
+    {
+        int     start = pos;
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                long now = System.currentTimeMillis();
-                stmtInsertUpdateOrderLine.setInt(1, o_id);
-                stmtInsertUpdateOrderLine.setInt(2, w_id + 10);
-                stmtInsertUpdateOrderLine.setInt(3, w_id);
-                stmtInsertUpdateOrderLine.setInt(4, ol_number);
-//                stmtInsertUpdateOrderLine.setInt(5, rnd.nextInt(1, 100000));
-                stmtInsertUpdateOrderLine.setInt(5, 12345);
-                stmtInsertUpdateOrderLine.setInt(6, w_id);
-                if (o_id < 2101)
-                    stmtInsertUpdateOrderLine.setTimestamp(7, new java.sql.Timestamp(now));
-                else
-                    stmtInsertUpdateBucketOrderLine.setNull(7, java.sql.Types.TIMESTAMP);
-                stmtInsertUpdateOrderLine.setInt(8, 5);
-                if (o_id < 2101)
-                    stmtInsertUpdateOrderLine.setDouble(9, 0.00);
-                else
-                    stmtInsertUpdateOrderLine.setDouble(9, ((double) rnd.nextLong(1, 999999)) / 100.0);
-                stmtInsertUpdateOrderLine.setString(10, rnd.getAString(24, 24));
-//                stmtInsertUpdateOrderLine.setString(11, "12345");
-                stmtInsertUpdateOrderLine.addBatch();
-                i = i + 1;
-                if (i%commitbatch == 0) {
-                    stmtInsertUpdateOrderLine.executeBatch();
-                    stmtInsertUpdateOrderLine.clearBatch();
-//                    System.out.println(stmtInsertUpdateOrderLine);
-                    dbConn.commit();
-                }
-            }
-        }
-        stmtInsertUpdateOrderLine.executeBatch();
-        stmtInsertUpdateOrderLine.clearBatch();
-        dbConn.commit();
+        while (pos < msgLen && body[pos] != 0)
+            pos++;
+        return new String(body, start, (pos++) - start,
+                java.nio.charset.StandardCharsets.UTF_8);
     }
 
-    private void InsertUpdateBucket(int w_id,int commitbatch)
-            throws SQLException, IOException {
-        int i=0;
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-            int o_ol_cnt = 10;
+    private int     msgPos;
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                long now = System.currentTimeMillis();
-                stmtInsertUpdateBucketOrderLine.setInt(1, o_id);
-                stmtInsertUpdateBucketOrderLine.setInt(2, w_id + 10);
-                stmtInsertUpdateBucketOrderLine.setInt(3, w_id);
-                stmtInsertUpdateBucketOrderLine.setInt(4, ol_number);
-//                stmtInsertUpdateBucketOrderLine.setInt(5, rnd.nextInt(1, 100000));
-                stmtInsertUpdateBucketOrderLine.setInt(5, 1234567);
-                stmtInsertUpdateBucketOrderLine.setInt(6, w_id);
-                if (o_id < 2101)
-                    stmtInsertUpdateBucketOrderLine.setTimestamp(7, new java.sql.Timestamp(now));
-                else
-                    stmtInsertUpdateBucketOrderLine.setNull(7, java.sql.Types.TIMESTAMP);
-                stmtInsertUpdateBucketOrderLine.setInt(8, 5);
-                if (o_id < 2101)
-                    stmtInsertUpdateBucketOrderLine.setDouble(9, 0.00);
-                else
-                    stmtInsertUpdateBucketOrderLine.setDouble(9, ((double) rnd.nextLong(1, 999999)) / 100.0);
-                stmtInsertUpdateBucketOrderLine.setString(10, rnd.getAString(24, 24));
-//                stmtInsertUpdateBucketOrderLine.setString(11, "123456");
-                stmtInsertUpdateBucketOrderLine.addBatch();
-                i = i + 1;
-                if (i%commitbatch == 0) {
-                    stmtInsertUpdateBucketOrderLine.executeBatch();
-                    stmtInsertUpdateBucketOrderLine.clearBatch();
-//                    System.out.println(stmtInsertUpdateOrderLine);
-                    dbConn.commit();
-                }
-            }
-        }
-        stmtInsertUpdateBucketOrderLine.executeBatch();
-        stmtInsertUpdateBucketOrderLine.clearBatch();
-        dbConn.commit();
+    private void begin(char type)
+    {
+        msg[0] = (byte)type;
+        msgPos = 5;
     }
-    private void delete_batch(int w_id,int commitbatch)
-            throws SQLException, IOException {
-        int i=0;
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-//            int o_ol_cnt = rnd.nextInt(5, 15);
-            int o_ol_cnt = 10;
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                stmtDeleteOrderLine.setInt(1, o_id);
-                stmtDeleteOrderLine.setInt(2, w_id + 10);
-                stmtDeleteOrderLine.setInt(3, w_id);
-                stmtDeleteOrderLine.setInt(4, ol_number);
-                stmtDeleteOrderLine.addBatch();
-                i = i + 1;
-                if (i%commitbatch == 0){
-                    stmtDeleteOrderLine.executeBatch();
-                    stmtDeleteOrderLine.clearBatch();
-                    dbConn.commit();
-//                    System.out.println(i);
-                }
-            }
+    private void end()
+            throws IOException
+    {
+        int     len = msgPos - 1;
 
-        }
-        stmtDeleteOrderLine.executeBatch();
-        stmtDeleteOrderLine.clearBatch();
-        dbConn.commit();
+        msg[1] = (byte)(len >>> 24);
+        msg[2] = (byte)(len >>> 16);
+        msg[3] = (byte)(len >>> 8);
+        msg[4] = (byte)len;
+        out.write(msg, 0, msgPos);
     }
 
-    private void update_batch_value(int w_id,int commitbatch)
-            throws SQLException, IOException {
-        int i=0;
-        String str1 = "update bmsql_order_line@{no_full_scan} " +
-                "  set ol_i_id = 1234 " +
-                "  from (values ";
-        String str2 = "  ) as data(d1,d2,d3,d4) where ol_o_id =data.d1 and  ol_d_id = data.d2 and " +
-                "ol_w_id = data.d3 and ol_number =data.d4";
-        String strtmp = "";
-        Statement st = dbConn.createStatement();
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-//            int o_ol_cnt = rnd.nextInt(5, 15);
-            int o_ol_cnt = 10;
+    private void ensure(int n)
+    {
+        if (msgPos + n > msg.length)
+            msg = Arrays.copyOf(msg, Math.max(msg.length * 2, msgPos + n));
+    }
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                strtmp = strtmp +"(" +o_id + "," + (w_id +10) + "," + w_id + "," + ol_number +")";
-                i = i + 1;
-                if (i%commitbatch == 0){
-                    strtmp=str1 + strtmp + str2;
-//                    System.out.println(strtmp);
-                    st.execute(strtmp);
-                    dbConn.commit();
-                    strtmp = "";
-//                    System.out.println(i);
-                }
-                if (!strtmp.equals("")){
-                    strtmp = strtmp + ",";
-                }
-            }
+    private void putByte(int v)
+    {
+        ensure(1);
+        msg[msgPos++] = (byte)v;
+    }
 
-        }
-        if (!strtmp.endsWith("")) {
-            if (strtmp.endsWith(",")) {
-                strtmp = strtmp.substring(0, strtmp.length() - 1);
-            }
-            strtmp = str1 + strtmp + str2;
-            st.execute(strtmp);
-            dbConn.commit();
-            strtmp = "";
-        }
+    private void putShort(int v)
+    {
+        ensure(2);
+        msg[msgPos++] = (byte)(v >>> 8);
+        msg[msgPos++] = (byte)v;
     }
 
-    private void update_batch_value_list(int w_id,int commitbatch)
-            throws SQLException, IOException {
-        int i=0;
-        String str1 = "update bmsql_order_line@{no_full_scan} " +
-                "  set ol_i_id = 1 " +
-                "  from (values ";
-        String str2 = "  ) as data(d0,d1,d2,d3,d4) where bmsql_o_l = data.d0 and  ol_o_id =data.d1 and  ol_d_id = data.d2 and " +
-                "ol_w_id = data.d3 and ol_number =data.d4";
-        String strtmp = "";
-        Statement st = dbConn.createStatement();
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-//            int o_ol_cnt = rnd.nextInt(5, 15);
-            int o_ol_cnt = 10;
+    private void putInt(int v)
+    {
+        ensure(4);
+        msg[msgPos++] = (byte)(v >>> 24);
+        msg[msgPos++] = (byte)(v >>> 16);
+        msg[msgPos++] = (byte)(v >>> 8);
+        msg[msgPos++] = (byte)v;
+    }
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                strtmp = strtmp +"(" + (w_id%12) + "," +o_id + "," + (w_id +10) + "," + w_id + "," + ol_number +")";
-                i = i + 1;
-                if (i%commitbatch == 0){
-                    strtmp=str1 + strtmp + str2;
-//                    System.out.println(strtmp);
-                    st.execute(strtmp);
-                    dbConn.commit();
-                    strtmp = "";
-//                    System.out.println(i);
-                }
-                if (!strtmp.equals("")){
-                    strtmp = strtmp + ",";
-                }
-            }
+    private void putString(String s)
+    {
+        byte[]  b = s.getBytes(java.nio.charset.StandardCharsets.UTF_8);
 
-        }
-        if (!strtmp.endsWith("")) {
-            if (strtmp.endsWith(",")) {
-                strtmp = strtmp.substring(0, strtmp.length() - 1);
+        ensure(b.length + 1);
+        System.arraycopy(b, 0, msg, msgPos, b.length);
+        msgPos += b.length;
+        msg[msgPos++] = 0;
+    }
+} // end PgStandInSession
+
+
+/*
+ * CopyRowCounter
+ *
+ *     Counts the rows of a COPY stream that arrives in arbitrary pieces.
+ *     Text format has one row per newline. Binary format is walked tuple
+ *     by tuple, skipping the field data.
+ */
+class CopyRowCounter
+{
+    private static final int    HEADER = 0;
+    private static final int    TUPLE = 1;
+    private static final int    FIELD = 2;
+    private static final int    DONE = 3;
+
+    private boolean     binary;
+    private long        rows = 0;
+    private int         phase = HEADER;
+    private byte[]      hdr = new byte[19];
+    private int         hdrNeed = 19;
+    private int         hdrHave = 0;
+    private long        skip = 0;
+    private int         fieldsLeft = 0;
+
+    CopyRowCounter(boolean binary)
+    {
+        this.binary = binary;
+    }
+
+    public long rows()
+    {
+        return rows;
+    }
+
+    public void add(byte[] buf, int off, int len)
+    {
+        int     end = off + len;
+
+        if (!binary)
+        {
+            for (int i = off; i < end; i++)
+            {
+                if (buf[i] == '\n')
+                    rows++;
             }
-            strtmp = str1 + strtmp + str2;
-            st.execute(strtmp);
-            dbConn.commit();
-            strtmp = "";
+            return;
         }
-    }
 
-    private void delete_batch_value(int w_id,int commitbatch)
-            throws SQLException, IOException {
-        int i=0;
-        String str1 = "delete from bmsql_order_line@{no_full_scan} " +
-                "  where (ol_o_id,ol_d_id,ol_w_id,ol_number) in ( ";
-        String strtmp = "";
-        Statement st = dbConn.createStatement();
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-//            int o_ol_cnt = rnd.nextInt(5, 15);
-            int o_ol_cnt = 10;
+        while (off < end && phase != DONE)
+        {
+            if (skip > 0)
+            {
+                int     n = (int)Math.min(skip, end - off);
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                strtmp = strtmp +"(" +o_id + "," + (w_id +10) + "," + w_id + "," + ol_number +")";
-                i = i + 1;
-                if (i%commitbatch == 0){
-                    strtmp=str1 + strtmp + ")";
-//                    System.out.println(strtmp);
-                    st.execute(strtmp);
-                    dbConn.commit();
-                    strtmp = "";
-//                    System.out.println(i);
-                }
-                if (!strtmp.equals("")){
-                    strtmp = strtmp + ",";
-                }
+                skip -= n;
+                off += n;
+                continue;
             }
 
-        }
-        if (!strtmp.endsWith("")) {
-            if (strtmp.endsWith(",")) {
-                strtmp = strtmp.substring(0, strtmp.length() - 1);
+            int     n = Math.min(hdrNeed - hdrHave, end - off);
+
+            System.arraycopy(buf, off, hdr, hdrHave, n);
+            hdrHave += n;
+            off += n;
+            if (hdrHave < hdrNeed)
+                break;
+            hdrHave = 0;
+
+            switch (phase)
+            {
+                case HEADER:
+                    skip = getInt(15);          // header extension
+                    expect(TUPLE);
+                    break;
+
+                case TUPLE:
+                    int count = (short)(((hdr[0] & 0xff) << 8) |
+                            (hdr[1] & 0xff));
+
+                    if (count < 0)
+                    {
+                        phase = DONE;
+                        break;
+                    }
+                    rows++;
+                    fieldsLeft = count;
+                    expect((count == 0) ? TUPLE : FIELD);
+                    break;
+
+                case FIELD:
+                    int len2 = getInt(0);
+
+                    if (len2 > 0)
+                        skip = len2;
+                    expect((--fieldsLeft == 0) ? TUPLE : FIELD);
+                    break;
             }
-            strtmp = str1 + strtmp + ")";
-            st.execute(strtmp);
-            dbConn.commit();
-            strtmp = "";
         }
     }
 
-    private void insert_batch_value(int w_id,int commitbatch)
-            throws SQLException, IOException {
-        int i = 0;
-        String str1 = "INSERT INTO bmsql_order_line (" +
-                "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
-                "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
-                "  ol_amount, ol_dist_info) " +
-                "VALUES ";
-        String strtmp = "";
-        Statement st = dbConn.createStatement();
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-            int o_ol_cnt = 10;
+    private void expect(int next)
+    {
+        phase = next;
+        hdrNeed = (next == TUPLE) ? 2 : 4;
+    }
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                long now = System.currentTimeMillis();
-                strtmp = strtmp +"(" + o_id + "," + (w_id+10) + "," + w_id + "," + ol_number + "," + rnd.nextInt(1, 100000) +"," + w_id + ",";
+    private int getInt(int off)
+    {
+        return ((hdr[off] & 0xff) << 24) | ((hdr[off + 1] & 0xff) << 16) |
+                ((hdr[off + 2] & 0xff) << 8) | (hdr[off + 3] & 0xff);
+    }
+} // end CopyRowCounter
 
-                if (o_id < 2101)
-                    strtmp = strtmp +  "'" + (new java.sql.Timestamp(now)) + "'"+ ", ";
-                else
-                    strtmp = strtmp +   null + ", ";
-                strtmp = strtmp + 5 + ", ";
-                if (o_id < 2101)
-                    strtmp = strtmp + 0.00 + ", ";
-                else
-                    strtmp = strtmp + ((double) rnd.nextLong(1, 999999)) / 100.0 + ",";
-                i = i+1;
-                if (i%commitbatch == 0) {
-                    strtmp = str1 + strtmp + "'" + rnd.getAString(24, 24) + "')";
-//                    System.out.println(strtmp);
-                    st.execute(strtmp);
-                    dbConn.commit();
-                    strtmp = "";
-                }else {
-                    strtmp = strtmp + "'" + rnd.getAString(24, 24) + "'" + "),";
-                }
-            }
-            if (!strtmp.endsWith("")) {
-                if (strtmp.endsWith(",")) {
-                    strtmp = strtmp.substring(0, strtmp.length() - 1);
-                }
-                strtmp = str1 + strtmp;
-                st.execute(strtmp);
-                dbConn.commit();
-                strtmp = "";
-            }
-        }
 
-        if (!writeCSV) {
-            dbConn.commit();
-        }
+/*
+ * Microbench
+ *
+ *     Microbenchmarks of the client side hot paths of the loader:
+ *     random data generation, CSV formatting, SQL text building and
+ *     parameter binding. It lives in this file because it benchmarks
+ *     the package private classes here directly.
+ *
+ *         java -cp .:<driver jar> Microbench [filter] [-wi n] [-i n] [-t ms]
+ *
+ *     filter selects benchmarks by name prefix, -wi and -i set the number
+ *     of warmup and measured iterations and -t the length of one
+ *     iteration.
+ */
+class Microbench
+{
+    /*
+     * Results of every benchmark go here so the JIT cannot drop the
+     * work as dead code.
+     */
+    public static volatile long sink;
+
+    private static int          warmupIterations = 5;
+    private static int          iterations = 10;
+    private static long         iterationMillis = 1000;
+
+    /*
+     * Bench
+     *
+     *     One benchmark. run(ops) performs the operation ops times and
+     *     returns something derived from the results.
+     */
+    interface Bench
+    {
+        long run(int ops) throws Exception;
     }
 
-    private void upsert_batch_value(int w_id,int commitbatch)
-            throws SQLException, IOException {
-        int i = 0;
-        String str1 = "UPSERT INTO bmsql_order_line@{no_full_scan} (" +
-                "  ol_o_id, ol_d_id, ol_w_id, ol_number, ol_i_id, " +
-                "  ol_supply_w_id, ol_delivery_d, ol_quantity, " +
-                "  ol_amount, ol_dist_info) " +
-                "VALUES ";
-        String strtmp = "";
-        Statement st = dbConn.createStatement();
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-            int o_ol_cnt = 10;
+    public static void main(String[] args)
+            throws Exception
+    {
+        String  filter = "";
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                long now = System.currentTimeMillis();
-                strtmp = strtmp +"(" + o_id + "," + (w_id+10) + "," + w_id + "," + ol_number + "," + 123 +"," + w_id + ",";
+        for (int i = 0; i < args.length; i++)
+        {
+            if (args[i].equals("-wi"))
+                warmupIterations = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-i"))
+                iterations = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-t"))
+                iterationMillis = Long.parseLong(args[++i]);
+            else
+                filter = args[i];
+        }
 
-                if (o_id < 2101)
-                    strtmp = strtmp +  "'" + (new java.sql.Timestamp(now)) + "'"+ ", ";
-                else
-                    strtmp = strtmp +   null + ", ";
-                strtmp = strtmp + 5 + ", ";
-                if (o_id < 2101)
-                    strtmp = strtmp + 0.00 + ", ";
-                else
-                    strtmp = strtmp + ((double) rnd.nextLong(1, 999999)) / 100.0 + ",";
-                i = i+1;
-                if (i%commitbatch == 0) {
-                    strtmp = str1 + strtmp + "'" + rnd.getAString(24, 24) + "')";
-//                    System.out.println(strtmp);
-                    st.execute(strtmp);
-                    dbConn.commit();
-                    strtmp = "";
-                }else {
-                    strtmp = strtmp + "'" + rnd.getAString(24, 24) + "'" + "),";
+        final jTPCCRandom   rnd = new jTPCCRandom().newRandom();
+        final OrderLineBatch order = new OrderLineBatch(
+                OrderLineBatch.LINES_PER_ORDER);
+        final OrderLineBatch batch = new OrderLineBatch(1000);
+        final LoadDataWorker csvWorker = new LoadDataWorker(0, "NULL",
+                rnd.newRandom(), "insert");
+        final LoadDataWorker dbWorker = new LoadDataWorker(0,
+                stubConnection(), rnd.newRandom(), "insert", 1000);
+        final PreparedStatement stub = stubStatement();
+
+        order.fill(rnd, 1, 0, order.capacity(), OrderLineBatch.RANDOM_ITEM);
+        batch.fill(rnd, 1, 0, batch.capacity(), OrderLineBatch.RANDOM_ITEM);
+
+        Map<String, Bench> benches = new LinkedHashMap<String, Bench>();
+
+        benches.put("random.nextInt", new Bench()
+        {
+            public long run(int ops)
+            {
+                long    r = 0;
+                for (int i = 0; i < ops; i++)
+                    r += rnd.nextInt(1, 100000);
+                return r;
+            }
+        });
+        benches.put("random.getAString(24)", new Bench()
+        {
+            public long run(int ops)
+            {
+                long    r = 0;
+                for (int i = 0; i < ops; i++)
+                    r += rnd.getAString(24, 24).length();
+                return r;
+            }
+        });
+        benches.put("random.getItemID", new Bench()
+        {
+            public long run(int ops)
+            {
+                long    r = 0;
+                for (int i = 0; i < ops; i++)
+                    r += rnd.getItemID();
+                return r;
+            }
+        });
+        benches.put("random.getCLast", new Bench()
+        {
+            public long run(int ops)
+            {
+                long    r = 0;
+                for (int i = 0; i < ops; i++)
+                    r += rnd.getCLast().length();
+                return r;
+            }
+        });
+        benches.put("csv.formatOrderLines(10 rows)", new Bench()
+        {
+            public long run(int ops)
+                    throws IOException
+            {
+                OutputStream    discard = OutputStream.nullOutputStream();
+                long            r = 0;
+                for (int i = 0; i < ops; i++)
+                {
+                    PGCopyTextEncoder enc = csvWorker.formatOrderLines(order);
+                    r += enc.size();
+                    enc.writeTo(discard);
                 }
+                return r;
+            }
+        });
+        benches.put("sql.insertValues(1000 rows)", new Bench()
+        {
+            public long run(int ops)
+            {
+                long    r = 0;
+                for (int i = 0; i < ops; i++)
+                    r += dbWorker.buildInsertValues(
+                            LoadDataWorker.INSERT_VALUES_HEAD, batch).length();
+                return r;
             }
-            if (!strtmp.endsWith("")) {
-                if (strtmp.endsWith(",")) {
-                    strtmp = strtmp.substring(0, strtmp.length() - 1);
+        });
+        benches.put("sql.updateValues(1000 rows)", new Bench()
+        {
+            public long run(int ops)
+            {
+                long    r = 0;
+                for (int i = 0; i < ops; i++)
+                    r += dbWorker.buildUpdateValues(batch).length();
+                return r;
+            }
+        });
+        benches.put("bind.stmtOrderLine(10 rows)", new Bench()
+        {
+            public long run(int ops)
+                    throws SQLException
+            {
+                for (int i = 0; i < ops; i++)
+                    dbWorker.bindOrderLines(order);
+                return ops;
+            }
+        });
+
+        /*
+         * The same number of calls on the stub statement without any of
+         * the binding work, i.e. the cost of the stub itself. Subtract it
+         * from bind.stmtOrderLine.
+         */
+        benches.put("bind.stubBaseline(10 rows)", new Bench()
+        {
+            public long run(int ops)
+                    throws SQLException
+            {
+                for (int i = 0; i < ops; i++)
+                {
+                    for (int row = 0; row < OrderLineBatch.LINES_PER_ORDER;
+                         row++)
+                    {
+                        for (int col = 1; col <= 10; col++)
+                            stub.setInt(col, row);
+                        stub.addBatch();
+                    }
                 }
-                strtmp = str1 + strtmp;
-                st.execute(strtmp);
-                dbConn.commit();
-                strtmp = "";
+                return ops;
             }
-        }
+        });
 
-        if (!writeCSV) {
-            dbConn.commit();
+        System.out.printf("%-32s %14s %12s %16s%n",
+                "benchmark", "ns/op", "+-", "ops/s");
+        for (Map.Entry<String, Bench> e : benches.entrySet())
+        {
+            if (e.getKey().startsWith(filter))
+                measure(e.getKey(), e.getValue());
         }
     }
 
-    private void UpsertWarehouse(int w_id,int commitbatch)
-            throws SQLException, IOException {
-        int i=0;
-        for (int o_id = 1; o_id <= 3000; o_id++) {
-            int o_ol_cnt = 10;
+    /*
+     * measure(name, bench)
+     *
+     *     Find an op count that fills one iteration, run the warmup
+     *     iterations, then report mean and standard deviation of the
+     *     measured ones.
+     */
+    private static void measure(String name, Bench bench)
+            throws Exception
+    {
+        int         ops = 1;
+        double[]    nsPerOp = new double[iterations];
+        double      mean = 0.0;
+        double      var = 0.0;
 
-            /*
-             * Create the ORDER_LINE rows for this ORDER.
-             */
-            for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                long now = System.currentTimeMillis();
-
-                stmtUpsertBucketOrderLine.setInt(1, o_id);
-                stmtUpsertBucketOrderLine.setInt(2, w_id + 10);
-                stmtUpsertBucketOrderLine.setInt(3, w_id);
-                stmtUpsertBucketOrderLine.setInt(4, ol_number);
-                stmtUpsertBucketOrderLine.setInt(5, 12345678);
-                stmtUpsertBucketOrderLine.setInt(6, w_id);
-                if (o_id < 2101)
-                    stmtUpsertBucketOrderLine.setTimestamp(7, new java.sql.Timestamp(now));
-                else
-                    stmtUpsertBucketOrderLine.setNull(7, java.sql.Types.TIMESTAMP);
-                stmtUpsertBucketOrderLine.setInt(8, 5);
-                if (o_id < 2101)
-                    stmtUpsertBucketOrderLine.setDouble(9, 0.00);
-                else
-                    stmtUpsertBucketOrderLine.setDouble(9, ((double) rnd.nextLong(1, 999999)) / 100.0);
-                stmtUpsertBucketOrderLine.setString(10, rnd.getAString(24, 24));
-                stmtUpsertBucketOrderLine.addBatch();
-            }
-            i=i+1;
-            if(i%commitbatch ==0) {
-                stmtUpsertBucketOrderLine.executeBatch();
-                stmtUpsertBucketOrderLine.clearBatch();
-                dbConn.commit();
+        for (;;)
+        {
+            long    start = System.nanoTime();
+            sink += bench.run(ops);
+            long    nanos = System.nanoTime() - start;
+
+            if (nanos >= iterationMillis * 1000000L / 10)
+            {
+                ops = (int)Math.max(1, Math.min(Integer.MAX_VALUE,
+                        (double)ops * iterationMillis * 1000000L / nanos));
+                break;
             }
+            ops *= 2;
         }
-        dbConn.commit();
+
+        for (int i = 0; i < warmupIterations; i++)
+            sink += bench.run(ops);
+
+        for (int i = 0; i < iterations; i++)
+        {
+            long    start = System.nanoTime();
+            sink += bench.run(ops);
+            nsPerOp[i] = (double)(System.nanoTime() - start) / ops;
+            mean += nsPerOp[i];
         }
+        mean /= iterations;
+        for (int i = 0; i < iterations; i++)
+            var += (nsPerOp[i] - mean) * (nsPerOp[i] - mean);
+        var = (iterations > 1) ? var / (iterations - 1) : 0.0;
 
-    private void loadWarehouse(int w_id)
-            throws SQLException, IOException {
-            for (int o_id = 1; o_id <= 3000; o_id++) {
-                int o_ol_cnt = 10;
-
-                /*
-                 * Create the ORDER_LINE rows for this ORDER.
-                 */
-                for (int ol_number = 1; ol_number <= o_ol_cnt; ol_number++) {
-                    long now = System.currentTimeMillis();
-
-                    if (writeCSV) {
-                        fmtOrderLine.format("%d,%d,%d,%d,%d,%s,%.2f,%d,%d,%s\n",
-                                w_id,
-                                w_id + 10,
-                                o_id,
-                                ol_number,
-                                rnd.nextInt(1, 100000),
-                                (o_id < 2101) ? new java.sql.Timestamp(now).toString() : csvNull,
-                                (o_id < 2101) ? 0.00 : ((double) rnd.nextLong(1, 999999)) / 100.0,
-                                w_id,
-                                5,
-                                rnd.getAString(24, 24));
-                    } else {
-                        stmtOrderLine.setInt(1, o_id);
-                        stmtOrderLine.setInt(2, w_id + 10);
-                        stmtOrderLine.setInt(3, w_id);
-                        stmtOrderLine.setInt(4, ol_number);
-                        stmtOrderLine.setInt(5, rnd.nextInt(1, 100000));
-                        stmtOrderLine.setInt(6, w_id);
-                        if (o_id < 2101)
-                            stmtOrderLine.setTimestamp(7, new java.sql.Timestamp(now));
-                        else
-                            stmtOrderLine.setNull(7, java.sql.Types.TIMESTAMP);
-                        stmtOrderLine.setInt(8, 5);
-                        if (o_id < 2101)
-                            stmtOrderLine.setDouble(9, 0.00);
-                        else
-                            stmtOrderLine.setDouble(9, ((double) rnd.nextLong(1, 999999)) / 100.0);
-                        stmtOrderLine.setString(10, rnd.getAString(24, 24));
-
-                        stmtOrderLine.addBatch();
+        System.out.printf("%-32s %14.1f %12.1f %16.1f%n",
+                name, mean, Math.sqrt(var), 1e9 / mean);
+    }
+
+    /*
+     * stubConnection()
+     *
+     *     A Connection that hands out stub statements and accepts
+     *     everything else, enough for the LoadDataWorker constructor.
+     */
+    private static Connection stubConnection()
+    {
+        return (Connection)Proxy.newProxyInstance(
+                Microbench.class.getClassLoader(),
+                new Class<?>[] {Connection.class},
+                new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method m, Object[] a)
+                    {
+                        if (m.getName().startsWith("prepare"))
+                            return stubStatement();
+                        return defaultValue(m.getReturnType());
                     }
-                }
-                if (writeCSV) {
-                    Main.orderLineAppend(sbOrderLine);
-                } else {
-                    stmtOrderLine.executeBatch();
-                    stmtOrderLine.clearBatch();
-                }
-                if (!writeCSV)
-                    dbConn.commit();
-            }
+                });
+    }
 
-            if (!writeCSV) {
-                dbConn.commit();
-            }
+    /*
+     * stubStatement()
+     *
+     *     A PreparedStatement that discards all parameters, the way a
+     *     driver with zero cost would.
+     */
+    private static PreparedStatement stubStatement()
+    {
+        return (PreparedStatement)Proxy.newProxyInstance(
+                Microbench.class.getClassLoader(),
+                new Class<?>[] {PreparedStatement.class,
+                        org.qianbase.PGStatement.class},
+                new InvocationHandler()
+                {
+                    public Object invoke(Object proxy, Method m, Object[] a)
+                    {
+                        if (m.getName().equals("unwrap"))
+                            return proxy;
+                        if (m.getName().equals("executeBatch"))
+                            return new int[0];
+                        return defaultValue(m.getReturnType());
+                    }
+                });
     }
-}
+
+    private static Object defaultValue(Class<?> type)
+    {
+        if (type == boolean.class)
+            return Boolean.FALSE;
+        if (type == int.class)
+            return 0;
+        if (type == long.class)
+            return 0L;
+        if (type == double.class)
+            return 0.0;
+        if (type == float.class)
+            return 0.0f;
+        if (type == short.class)
+            return (short)0;
+        if (type == byte.class)
+            return (byte)0;
+        return null;
+    }
+} // end Microbench